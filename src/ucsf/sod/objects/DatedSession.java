@@ -2,12 +2,18 @@ package ucsf.sod.objects;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatedSession implements Session, Comparable<DatedSession> {
 
 	public final LocalDate date;
 	public final Session session;
+
+	// Canonical instances by date, indexed by the ordinal of their generic period
+	private static final Map<LocalDate, DatedSession[]> CACHE = new ConcurrentHashMap<LocalDate, DatedSession[]>();
+
 	private DatedSession(LocalDate date, Session s) {
 		
 		if(s instanceof DatedSession)
@@ -74,7 +80,17 @@ public class DatedSession implements Session, Comparable<DatedSession> {
 	}
 
 	public static DatedSession of(LocalDate date, Period p) {
-		return new DatedSession(date, GenericSession.toSession(date, p));
+		GenericSession session = GenericSession.toSession(date, p);
+		DatedSession[] sessions = CACHE.get(date);
+		if(sessions == null) {
+			sessions = CACHE.computeIfAbsent(date, d -> new DatedSession[GenericPeriod.values().length]);
+		}
+		
+		DatedSession s = sessions[session.period.ordinal()];
+		if(s == null) { // instances are immutable, so a racing thread may only replace one with an equal one
+			sessions[session.period.ordinal()] = s = new DatedSession(date, session);
+		}
+		return s;
 	}
 	
 	@Override
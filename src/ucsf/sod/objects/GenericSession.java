@@ -2,6 +2,8 @@ package ucsf.sod.objects;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public enum GenericSession implements Session {
 	
@@ -23,6 +25,15 @@ public enum GenericSession implements Session {
 	public final DayOfWeek day;
 	public final Clinic clinic;
 	public final GenericPeriod period;
+
+	// Sessions by [day of week][period], and the meridian of the other periods resolved once each
+	private static final GenericSession[][] SESSIONS = new GenericSession[DayOfWeek.values().length][GenericPeriod.values().length];
+	private static final Map<Period, GenericPeriod> MERIDIANS = new ConcurrentHashMap<Period, GenericPeriod>();
+	static {
+		for(GenericSession s : values()) {
+			SESSIONS[s.day.ordinal()][s.period.ordinal()] = s;
+		}
+	}
 	
 	GenericSession(DayOfWeek d, Clinic c, GenericPeriod p) {
 		this.day = d;
@@ -88,11 +99,16 @@ public enum GenericSession implements Session {
 	}
 	
 	public static GenericSession toSession(DayOfWeek dayOfWeek, Period p) {
+		GenericPeriod period = p instanceof GenericPeriod ? (GenericPeriod)p : MERIDIANS.computeIfAbsent(p, GenericSession::toMeridian);
+		return SESSIONS[dayOfWeek.ordinal()][period.ordinal()];
+	}
+
+	private static GenericPeriod toMeridian(Period p) {
 		var meridian = p.getMeridian();
 		if(meridian.length() == 3) {
 			meridian = meridian.substring(0, 2);
 		}
 		
-		return GenericSession.valueOf(dayOfWeek + "_" + meridian);		
+		return GenericPeriod.valueOf("GENERIC_" + meridian);
 	}
 }
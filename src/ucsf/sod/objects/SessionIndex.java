@@ -0,0 +1,60 @@
+package ucsf.sod.objects;
+
+import java.time.LocalDate;
+
+/**
+ * Maps the AM and PM session of each date from first to last to a dense int, in chronological order
+ */
+public class SessionIndex {
+
+	private static final int PERIODS = 2;
+
+	private final long firstDay;
+	private final int size;
+	private final DatedSession[] sessions; // created on first use
+
+	private SessionIndex(LocalDate first, LocalDate last) {
+		if(last.isBefore(first)) {
+			throw new IllegalArgumentException("Last date [" + last + "] is before the first date [" + first + "]");
+		}
+		firstDay = first.toEpochDay();
+		size = (int)(last.toEpochDay() - firstDay + 1) * PERIODS;
+		sessions = new DatedSession[size];
+	}
+
+	public static SessionIndex of(LocalDate first, LocalDate last) {
+		return new SessionIndex(first, last);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the index of the session, or -1 if its date is not indexed
+	 */
+	public int indexOf(DatedSession s) {
+		return indexOf(s.date, s.isAM());
+	}
+
+	public int indexOf(LocalDate date, Period p) {
+		return indexOf(date, p.isAM());
+	}
+
+	private int indexOf(LocalDate date, boolean am) {
+		long day = date.toEpochDay() - firstDay;
+		if(day < 0 || day >= size / PERIODS) {
+			return -1;
+		}
+		return (int)day * PERIODS + (am ? 0 : 1);
+	}
+
+	public DatedSession get(int index) {
+		DatedSession s = sessions[index];
+		if(s == null) {
+			LocalDate date = LocalDate.ofEpochDay(firstDay + index / PERIODS);
+			sessions[index] = s = DatedSession.of(date, index % PERIODS == 0 ? GenericPeriod.GENERIC_AM : GenericPeriod.GENERIC_PM);
+		}
+		return s;
+	}
+}
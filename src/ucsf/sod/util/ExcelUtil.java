@@ -19,6 +19,8 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
 
 public class ExcelUtil {
 
@@ -53,14 +55,12 @@ public class ExcelUtil {
 			}
 		}
 		
+		/**
+		 * Looks up the cell in the merged region index shared by all readers of the sheet; the sheet
+		 * is expected to be read-only once it is being read.
+		 */
 		public default Optional<CellRangeAddress> getMergedRegion(Row r) {
-		    for(CellRangeAddress mergedCell : r.getSheet().getMergedRegions()) { // TODO: cache this call somehow
-		        if(mergedCell.isInRange(r.getRowNum(), getIndex())) {
-		        	return Optional.of(mergedCell);
-		        }
-		    }
-		    
-		    return Optional.empty();
+			return MergedRegionIndex.of(r.getSheet()).find(r.getRowNum(), getIndex());
 		}
 		
 		public default String getValueFromRow(Row r) {
@@ -151,4 +151,45 @@ public class ExcelUtil {
 	public static HSSFPalette getPalette(Workbook wb) {
 		return ((HSSFWorkbook)wb).getCustomPalette();
 	}
+
+	/**
+	 * Fill foreground color of a HSSF or XSSF cell in the HSSFColor.getHexString() notation
+	 */
+	public static String getForegroundColorHex(Cell c) {
+		if(c.getCellStyle() instanceof XSSFCellStyle) {
+			return toHexString(((XSSFCellStyle)c.getCellStyle()).getFillForegroundColorColor());
+		}
+		
+		HSSFColor color = getForegroundColor(c);
+		return color == null ? null : color.getHexString();
+	}
+	
+	public static String toHexString(XSSFColor color) {
+		if(color == null) {
+			return null;
+		}
+		
+		byte[] rgb = color.getRGB();
+		return rgb == null ? null : toHexString(rgb);
+	}
+	
+	/**
+	 * Formats the RGB components the same way HSSFColor.getHexString() does, e.g. 8080:8080:8080
+	 */
+	public static String toHexString(byte[] rgb) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 3; i++) {
+			if(i != 0) {
+				sb.append(':');
+			}
+			
+			int c = rgb[i] & 0xFF;
+			if(c == 0) {
+				sb.append('0');
+			} else {
+				sb.append(String.format("%04X", (c << 8) | c));
+			}
+		}
+		return sb.toString();
+	}
 }
@@ -0,0 +1,41 @@
+package ucsf.sod.util;
+
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Read-only, index-based view of a worksheet. Rows and columns are zero-based.
+ * Implementations may be backed by a loaded Workbook or by a streamed copy of only the rows of interest.
+ */
+public interface GridSheet {
+
+	public String getSheetName();
+
+	/**
+	 * @return the index of the last row present, or -1 if the sheet is empty
+	 */
+	public int getLastRowNum();
+
+	public boolean hasRow(int row);
+
+	/**
+	 * Mirrors Row.getLastCellNum()
+	 * @return the index of the last cell in the row plus one, or -1 if the row is not present
+	 */
+	public int getLastCellNum(int row);
+
+	/**
+	 * @return the formatted value of the cell, or an empty string if the cell is not present
+	 */
+	public String getText(int row, int col);
+
+	/**
+	 * @return the fill foreground color in the HSSFColor.getHexString() notation, or null if the cell has no fill
+	 */
+	public String getFillColor(int row, int col);
+
+	public List<CellRangeAddress> getMergedRegions();
+
+	public MergedRegionIndex getMergedRegionIndex();
+}
@@ -0,0 +1,92 @@
+package ucsf.sod.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Row to sorted column ranges index of the merged regions of a sheet. Merged regions do not overlap,
+ * so the ranges within a row are disjoint and a cell lookup is a binary search.
+ */
+public class MergedRegionIndex {
+
+	private static final Map<Sheet, MergedRegionIndex> cache = Collections.synchronizedMap(new WeakHashMap<Sheet, MergedRegionIndex>());
+
+	private final Map<Integer, RowRanges> rows = new HashMap<Integer, RowRanges>();
+
+	private MergedRegionIndex(List<CellRangeAddress> regions) {
+		Map<Integer, List<CellRangeAddress>> byRow = new HashMap<Integer, List<CellRangeAddress>>();
+		for(CellRangeAddress region : regions) {
+			for(int row = region.getFirstRow(); row <= region.getLastRow(); row++) {
+				List<CellRangeAddress> l = byRow.get(row);
+				if(l == null) {
+					byRow.put(row, l = new ArrayList<CellRangeAddress>());
+				}
+				l.add(region);
+			}
+		}
+
+		for(Map.Entry<Integer, List<CellRangeAddress>> e : byRow.entrySet()) {
+			rows.put(e.getKey(), new RowRanges(e.getValue()));
+		}
+	}
+
+	/**
+	 * @return the index of the sheet, built on first use and shared by every caller reading that sheet
+	 */
+	public static MergedRegionIndex of(Sheet s) {
+		return cache.computeIfAbsent(s, _s -> new MergedRegionIndex(_s.getMergedRegions()));
+	}
+
+	public static MergedRegionIndex of(List<CellRangeAddress> regions) {
+		return new MergedRegionIndex(regions);
+	}
+
+	public Optional<CellRangeAddress> find(int row, int col) {
+		RowRanges r = rows.get(row);
+		if(r == null) {
+			return Optional.empty();
+		}
+
+		int index = Arrays.binarySearch(r.firstColumns, col);
+		if(index < 0) {
+			index = -index - 2; // the last range starting before the column
+		}
+
+		if(index >= 0 && r.regions[index].getLastColumn() >= col) {
+			return Optional.of(r.regions[index]);
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * @return the merged regions covering the row, sorted by their first column
+	 */
+	public List<CellRangeAddress> getRegionsInRow(int row) {
+		RowRanges r = rows.get(row);
+		return r == null ? List.of() : List.of(r.regions);
+	}
+
+	private static class RowRanges {
+		private final int[] firstColumns;
+		private final CellRangeAddress[] regions;
+
+		private RowRanges(List<CellRangeAddress> l) {
+			regions = l.toArray(new CellRangeAddress[l.size()]);
+			Arrays.sort(regions, Comparator.comparingInt(CellRangeAddress::getFirstColumn));
+			firstColumns = new int[regions.length];
+			for(int i = 0; i < regions.length; i++) {
+				firstColumns[i] = regions[i].getFirstColumn();
+			}
+		}
+	}
+}
@@ -65,6 +65,50 @@ public class SODDateUtils {
 		return time.equals(point) || time.isBefore(point);
 	}
 
+	/*
+	 * Epoch-day forms of the methods above, for loops that compare or bucket many dates; none of them create a LocalDate.
+	 * Epoch day 0 (1970-01-01) is a Thursday.
+	 */
+
+	public static int toEpochDay(LocalDate date) {
+		return (int)date.toEpochDay();
+	}
+
+	/**
+	 * @return the ISO day of week of the epoch day, 1 (Monday) to 7 (Sunday), as DayOfWeek.getValue()
+	 */
+	public static int getDayOfWeekValue(int epochDay) {
+		return Math.floorMod(epochDay + 3, 7) + 1;
+	}
+
+	public static int floorToLastMonday(int epochDay) {
+		return floorToDayOfWeek(epochDay, DayOfWeek.MONDAY);
+	}
+
+	public static int floorToDayOfWeek(int epochDay, DayOfWeek dayOfWeek) {
+		return epochDay - Math.floorMod(getDayOfWeekValue(epochDay) - dayOfWeek.getValue(), 7);
+	}
+
+	public static int ceilingToDayOfWeek(int epochDay, DayOfWeek dayOfWeek) {
+		return epochDay + Math.floorMod(dayOfWeek.getValue() - getDayOfWeekValue(epochDay), 7);
+	}
+
+	/**
+	 * @param startEpochDay any day of the first week, e.g. the start of the academic year
+	 * @return the number of weeks, Monday to Sunday, from the week of startEpochDay to the week of epochDay; negative before it
+	 */
+	public static int weekIndex(int epochDay, int startEpochDay) {
+		return Math.floorDiv(epochDay - floorToLastMonday(startEpochDay), 7);
+	}
+
+	public static boolean dateIsOnOrAfter(int epochDay, int point) {
+		return epochDay >= point;
+	}
+
+	public static boolean dateIsOnOrBefore(int epochDay, int point) {
+		return epochDay <= point;
+	}
+
 	public static Stream<LocalDate> getDailyLocalDateStreamInclusive(LocalDate start, LocalDate end) {
 		return start.datesUntil(end.plusDays(1));
 	}
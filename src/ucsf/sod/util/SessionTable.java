@@ -0,0 +1,180 @@
+package ucsf.sod.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ucsf.sod.objects.DatedSession;
+import ucsf.sod.objects.SessionIndex;
+
+/**
+ * Map of the sessions of a SessionIndex backed by an array, iterating in chronological order like a
+ * TreeMap<DatedSession, V> would. Sessions are keyed by date and half-day; null values are not supported.
+ */
+public class SessionTable<V> extends AbstractMap<DatedSession, V> {
+
+	private final SessionIndex index;
+	private final Object[] values;
+	private int size = 0;
+
+	public SessionTable(SessionIndex index) {
+		this.index = index;
+		this.values = new Object[index.size()];
+	}
+
+	public SessionIndex getIndex() {
+		return index;
+	}
+
+	private int indexOf(Object key) {
+		return key instanceof DatedSession ? index.indexOf((DatedSession)key) : -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		int i = indexOf(key);
+		return i >= 0 && values[i] != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V)values[i];
+	}
+
+	@Override
+	public V put(DatedSession key, V value) {
+		if(value == null) {
+			throw new NullPointerException("Null values are not supported: " + key);
+		}
+
+		int i = index.indexOf(key);
+		if(i < 0) {
+			throw new RuntimeException("Session is outside of the index: " + key);
+		}
+		return set(i, value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : set(i, null);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V set(int i, V value) {
+		V previous = (V)values[i];
+		values[i] = value;
+		if(previous == null && value != null) {
+			size++;
+		} else if(previous != null && value == null) {
+			size--;
+		}
+		return previous;
+	}
+
+	@Override
+	public Set<Map.Entry<DatedSession, V>> entrySet() {
+		return new AbstractSet<Map.Entry<DatedSession, V>>() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<DatedSession, V>> iterator() {
+				return new Iterator<Map.Entry<DatedSession, V>>() {
+					private int next = advance(0);
+					private int last = -1;
+
+					private int advance(int i) {
+						while(i < values.length && values[i] == null) {
+							i++;
+						}
+						return i;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < values.length;
+					}
+
+					@Override
+					public Map.Entry<DatedSession, V> next() {
+						if(!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						last = next;
+						next = advance(next + 1);
+						return new Entry(last);
+					}
+
+					@Override
+					public void remove() {
+						if(last < 0 || values[last] == null) {
+							throw new IllegalStateException();
+						}
+						set(last, null);
+					}
+				};
+			}
+		};
+	}
+
+	private class Entry implements Map.Entry<DatedSession, V> {
+		private final int i;
+
+		private Entry(int i) {
+			this.i = i;
+		}
+
+		@Override
+		public DatedSession getKey() {
+			return index.get(i);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V getValue() {
+			return (V)values[i];
+		}
+
+		@Override
+		public V setValue(V value) {
+			if(value == null) {
+				throw new NullPointerException("Null values are not supported: " + getKey());
+			}
+			return set(i, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+			return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ getValue().hashCode();
+		}
+	}
+}
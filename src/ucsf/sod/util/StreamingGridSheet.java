@@ -0,0 +1,246 @@
+package ucsf.sod.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.IntPredicate;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * GridSheet populated from a .xlsx file with the XSSF event (SAX) model. Only the rows accepted by
+ * the caller's filter are kept, and neither the Workbook nor the sheet DOM is ever built.
+ */
+public class StreamingGridSheet implements GridSheet {
+
+	public static final IntPredicate ALL_ROWS = row -> true;
+
+	private final String name;
+	private final TreeMap<Integer, GridRow> rows = new TreeMap<Integer, GridRow>();
+	private final List<CellRangeAddress> mergedRegions = new ArrayList<CellRangeAddress>();
+	private final String[] fillColors;
+	private MergedRegionIndex mergedRegionIndex;
+
+	private StreamingGridSheet(String name, String[] fillColors) {
+		this.name = name;
+		this.fillColors = fillColors;
+	}
+
+	/**
+	 * Streams the requested sheets out of the given .xlsx file in a single pass per sheet
+	 * @param f the .xlsx file
+	 * @param rowFilter given the sheet index and name, returns the rows to retain or null to skip the sheet
+	 * @return the sheets read, keyed by name in workbook order
+	 */
+	public static Map<String, GridSheet> read(File f, BiFunction<Integer, String, IntPredicate> rowFilter) throws IOException {
+		Map<String, GridSheet> sheets = new LinkedHashMap<String, GridSheet>();
+
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(f, PackageAccess.READ);
+		} catch (OpenXML4JException e) {
+			throw new IOException("Unable to open " + f, e);
+		}
+
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			StylesTable styles = reader.getStylesTable();
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			DataFormatter formatter = new DataFormatter();
+
+			// Resolve the fill color of every style once; the styles table is not kept
+			String[] fillColors = new String[styles.getNumCellStyles()];
+			for(int i = 0; i < fillColors.length; i++) {
+				fillColors[i] = ExcelUtil.toHexString(styles.getStyleAt(i).getFillForegroundColorColor());
+			}
+
+			XSSFReader.SheetIterator it = (XSSFReader.SheetIterator)reader.getSheetsData();
+			int index = 0;
+			while(it.hasNext()) {
+				try(InputStream in = it.next()) {
+					String name = it.getSheetName();
+					IntPredicate filter = rowFilter.apply(index++, name);
+					if(filter == null) {
+						continue;
+					}
+
+					StreamingGridSheet sheet = new StreamingGridSheet(name, fillColors);
+					SheetHandler handler = sheet.new SheetHandler(filter);
+					handler.delegate = new XSSFSheetXMLHandler(styles, strings, handler, formatter, false);
+
+					XMLReader parser = XMLHelper.newXMLReader();
+					parser.setContentHandler(handler);
+					parser.parse(new InputSource(in));
+					sheet.mergedRegionIndex = MergedRegionIndex.of(sheet.mergedRegions);
+					sheets.put(name, sheet);
+				}
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new IOException("Unable to stream " + f, e);
+		} finally {
+			pkg.revert();
+		}
+
+		return sheets;
+	}
+
+	@Override
+	public String getSheetName() {
+		return name;
+	}
+
+	@Override
+	public int getLastRowNum() {
+		return rows.isEmpty() ? -1 : rows.lastKey();
+	}
+
+	@Override
+	public boolean hasRow(int row) {
+		return rows.containsKey(row);
+	}
+
+	@Override
+	public int getLastCellNum(int row) {
+		GridRow r = rows.get(row);
+		return r == null ? -1 : r.lastCellNum;
+	}
+
+	@Override
+	public String getText(int row, int col) {
+		GridRow r = rows.get(row);
+		if(r == null || col >= r.text.length || r.text[col] == null) {
+			return "";
+		}
+		return r.text[col];
+	}
+
+	@Override
+	public String getFillColor(int row, int col) {
+		GridRow r = rows.get(row);
+		if(r == null || col >= r.style.length || r.style[col] < 0 || r.style[col] >= fillColors.length) {
+			return null;
+		}
+		return fillColors[r.style[col]];
+	}
+
+	@Override
+	public List<CellRangeAddress> getMergedRegions() {
+		return Collections.unmodifiableList(mergedRegions);
+	}
+
+	@Override
+	public MergedRegionIndex getMergedRegionIndex() {
+		return mergedRegionIndex;
+	}
+
+	private static class GridRow {
+		private String[] text = new String[0];
+		private int[] style = new int[0];
+		private int lastCellNum = -1;
+
+		private void ensureCapacity(int col) {
+			if(col >= text.length) {
+				int size = Math.max(col + 1, text.length << 1);
+				text = Arrays.copyOf(text, size);
+				int oldSize = style.length;
+				style = Arrays.copyOf(style, size);
+				Arrays.fill(style, oldSize, size, -1);
+			}
+			lastCellNum = Math.max(lastCellNum, col + 1);
+		}
+	}
+
+	/**
+	 * Passes the sheet XML through to POI's XSSFSheetXMLHandler for value formatting, while picking up
+	 * the cell styles (including those of blank cells) and the merged regions it does not report.
+	 */
+	private class SheetHandler extends DefaultHandler implements SheetContentsHandler {
+
+		private final IntPredicate filter;
+		private XSSFSheetXMLHandler delegate;
+		private GridRow current;
+
+		private SheetHandler(IntPredicate filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if("c".equals(localName) && current != null) {
+				String ref = attributes.getValue("r");
+				String s = attributes.getValue("s");
+				if(ref != null) {
+					int col = new CellAddress(ref).getColumn();
+					current.ensureCapacity(col);
+					current.style[col] = s == null ? 0 : Integer.parseInt(s);
+				}
+			} else if("mergeCell".equals(localName)) {
+				mergedRegions.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+			}
+			delegate.startElement(uri, localName, qName, attributes);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			delegate.endElement(uri, localName, qName);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			delegate.characters(ch, start, length);
+		}
+
+		@Override
+		public void startRow(int rowNum) {
+			if(filter.test(rowNum)) {
+				current = new GridRow();
+				rows.put(rowNum, current);
+			} else {
+				current = null;
+			}
+		}
+
+		@Override
+		public void endRow(int rowNum) {
+			current = null;
+		}
+
+		@Override
+		public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+			if(current == null || cellReference == null) {
+				return;
+			}
+
+			int col = new CellAddress(cellReference).getColumn();
+			current.ensureCapacity(col);
+			current.text[col] = formattedValue;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package ucsf.sod.util;
+
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * GridSheet backed by a Sheet of a fully loaded Workbook
+ */
+public class WorkbookGridSheet implements GridSheet {
+
+	private final Sheet sheet;
+	private final ThreadLocal<DataFormatter> df = ThreadLocal.withInitial(DataFormatter::new); // DataFormatter is not thread-safe
+
+	private WorkbookGridSheet(Sheet sheet) {
+		this.sheet = sheet;
+	}
+
+	public static WorkbookGridSheet of(Sheet sheet) {
+		return sheet == null ? null : new WorkbookGridSheet(sheet);
+	}
+
+	@Override
+	public String getSheetName() {
+		return sheet.getSheetName();
+	}
+
+	@Override
+	public int getLastRowNum() {
+		return sheet.getLastRowNum();
+	}
+
+	@Override
+	public boolean hasRow(int row) {
+		return sheet.getRow(row) != null;
+	}
+
+	@Override
+	public int getLastCellNum(int row) {
+		Row r = sheet.getRow(row);
+		return r == null ? -1 : r.getLastCellNum();
+	}
+
+	@Override
+	public String getText(int row, int col) {
+		Cell c = getCell(row, col);
+		return c == null ? "" : df.get().formatCellValue(c);
+	}
+
+	@Override
+	public String getFillColor(int row, int col) {
+		Cell c = getCell(row, col);
+		return c == null ? null : ExcelUtil.getForegroundColorHex(c);
+	}
+
+	@Override
+	public List<CellRangeAddress> getMergedRegions() {
+		return sheet.getMergedRegions();
+	}
+
+	@Override
+	public MergedRegionIndex getMergedRegionIndex() {
+		return MergedRegionIndex.of(sheet);
+	}
+
+	private Cell getCell(int row, int col) {
+		Row r = sheet.getRow(row);
+		return r == null ? null : r.getCell(col);
+	}
+}
@@ -30,8 +30,6 @@ import ucsf.sod.xo.ChairScheduler.ChairAssignment;
 import ucsf.sod.xo.ChairScheduler.ChairMapper;
 import ucsf.sod.xo.ChairScheduler.ChairPosition;
 import ucsf.sod.xo.ChairScheduler.WeekSchedule;
-import ucsf.sod.xo.XOGridUtils.ClinicStatus;
-import ucsf.sod.xo.XOGridUtils.ClinicStatus.OpenMode;
 import ucsf.sod.xo.calendar.AcademicCalendar;
 import ucsf.sod.xo.calendar.AcademicCalendar.Quarter;
 import ucsf.sod.xo.objects.GroupPractice;
@@ -57,11 +55,13 @@ public enum BaselineAxiumReport {
 		Map<DatedSession, List<Pairing>> dailyPerioWorkforce,
 		Map<DatedSession, Map<ChairPosition, ChairAssignment>> dailyPerioLayout,
 		XOGridReader reader,
+		ScheduleModel model,
 		Map<DatedSession, Map<GroupPractice, Student>> npvRotation,
 		Map<DatedSession, Map<GroupPractice, Student>> erRotation,
 		Map<GroupPractice, Map<DatedSession, List<Pairing>>> orphanPairings
 	) {
 		SODExcelFactory factory = new SODExcelFactory();
+		assignedER.clear(); // the report can be generated again after BaselineSchedule2023.regenerate()
 		BaselineAxiumReport.generateGlobalStatistics(factory, dailyWorkforce);
 		
 		generateStudentAllocationStatistics(
@@ -111,7 +111,7 @@ public enum BaselineAxiumReport {
 		generateISO(
 			factory,
 			"ID4 ISO",
-			GroupPractice.F.getAllStudents().stream().filter(s -> s.isID4()).collect(Collectors.toList()),
+			model.getStudentsStream(GroupPractice.F, s -> s.isID4()).collect(Collectors.toList()),
 			reader.getAcademicCalendar(),
 			reader.getAcademicCalendar().getAcademicStartDate().minusWeeks(2),
 			SODDateUtils.ceilingToDayOfWeek(reader.getD4EarliestExit(), DayOfWeek.FRIDAY)
@@ -122,15 +122,15 @@ public enum BaselineAxiumReport {
 			generateISO(
 				factory,
 				"ID3 ISO",
-				Student.getStudentsSorted(Student::isID3),
+				model.getStudentsSorted(Student::isID3),
 				calendar,
 				reader.getID3ISOStart(),
 				calendar.getAcademicEndDate()
 			);
 		}
 
-		generateLecture(factory, reader);
-		generateHuddle(factory, reader);
+		generateLecture(factory, reader, model);
+		generateHuddle(factory, reader, model);
 		
 		for(GroupPractice practice : XOGridUtils.ALL_PRACTICES) {
 			generateChairAllocation(
@@ -167,7 +167,7 @@ public enum BaselineAxiumReport {
 
 		
 		SODExcelFactory studentScheduleOverView = factory;
-		for(Student s : Student.getStudentsSorted(s -> s.isD3() || s.isD4() || s.isID3() || s.isID4() || s.isD2())) {
+		for(Student s : model.getStudentsSorted(s -> s.isD3() || s.isD4() || s.isID3() || s.isID4() || s.isD2())) {
 			System.err.println("Building schedule for " + s.id);
 
 			Map<LocalDate, WeekSchedule> schedule = assignmentsByStudent.getOrDefault(s, List.of()).stream().collect(
@@ -181,7 +181,7 @@ public enum BaselineAxiumReport {
 				)
 			);
 
-			generateStudentScheduleSummary(studentScheduleOverView, s, schedule, reader, npvRotation, erRotation);
+			generateStudentScheduleSummary(studentScheduleOverView, s, schedule, reader, model, npvRotation, erRotation);
 		}
 
 		return factory;
@@ -320,7 +320,7 @@ public enum BaselineAxiumReport {
 		Pair.of(DayOfWeek.FRIDAY, "PM")
 	);
 	
-	private static void generateStudentScheduleSummary(SODExcelFactory parentWorkbook, Student s, Map<LocalDate, WeekSchedule> schedule, XOGridReader reader, Map<DatedSession, Map<GroupPractice, Student>> npvRotation, Map<DatedSession, Map<GroupPractice, Student>> erRotation) {
+	private static void generateStudentScheduleSummary(SODExcelFactory parentWorkbook, Student s, Map<LocalDate, WeekSchedule> schedule, XOGridReader reader, ScheduleModel model, Map<DatedSession, Map<GroupPractice, Student>> npvRotation, Map<DatedSession, Map<GroupPractice, Student>> erRotation) {
 		
 		SODExcelFactory factory = parentWorkbook.createSheet(s.id);
 		
@@ -341,7 +341,7 @@ public enum BaselineAxiumReport {
 
 			WeekSchedule ws = schedule.get(date);
 			if(ws == null) {
-				factory.createCell(reader.getRotationByStudent(s, date, null));
+				factory.createCell(model.getRotation(s, date));
 				factory.mergeCellsCurrentRow(1, 10);
 			} else {
 				
@@ -684,12 +684,9 @@ public enum BaselineAxiumReport {
 	public static void generateISO(SODExcelFactory parentWorkbook, String name, Collection<Student> students, AcademicCalendar calendar, LocalDate startDate, LocalDate endDate) {
 
 		SODExcelFactory id4iso = parentWorkbook.createSheet(name);
-		for(LocalDate date = startDate; SODDateUtils.dateIsOnOrBefore(date, endDate); date = date.plusDays(date.getDayOfWeek() == DayOfWeek.FRIDAY ? 3 : 1)) {
-
-			ClinicStatus status = calendar.get(date);
-			if(status.status == OpenMode.CLOSED) {
-				continue;
-			}
+		int last = calendar.floorIndexOf(endDate);
+		for(int day = calendar.nextClinicDay(startDate); day >= 0 && day <= last; day = calendar.nextClinicDay(day + 1)) {
+			LocalDate date = calendar.getDate(day);
 
 			for(GenericPeriod period : List.of(GenericPeriod.GENERIC_AM, GenericPeriod.GENERIC_PM)) {
 				GenericSession session = GenericSession.toSession(date, period);
@@ -721,7 +718,7 @@ public enum BaselineAxiumReport {
 		}
 	}
 	
-	public static void generateLecture(SODExcelFactory factory, XOGridReader reader) {
+	public static void generateLecture(SODExcelFactory factory, XOGridReader reader, ScheduleModel model) {
 		
 		SODExcelFactory lecture = factory.createSheet("Lecture");
 		SODExcelFactory lectureDates = factory.createSheet("Lecture Dates");
@@ -729,7 +726,7 @@ public enum BaselineAxiumReport {
 		lectureDates.createRow("I/D4 Lecture");
 		for(LocalDate session : reader.getD4LectureDates()) {
 			lectureDates.createRow(List.of("", session.toString()));
-			for(Student s : Student.getStudentsSorted(s -> s.isD4() || s.isID4())) {
+			for(Student s : model.getStudentsSorted(s -> s.isD4() || s.isID4())) {
 				lecture.createRow(List.of(
 					ChairScheduler.DATE_FORMAT.format(session),
 					"09:00",
@@ -745,7 +742,7 @@ public enum BaselineAxiumReport {
 		lectureDates.createRow("I/D3 Lecture");
 		for(LocalDate session : reader.getD3LectureDates()) {
 			lectureDates.createRow(List.of("", session.toString()));
-			for(Student s : Student.getStudentsSorted(s -> s.isD3() || s.isID3())) {
+			for(Student s : model.getStudentsSorted(s -> s.isD3() || s.isID3())) {
 				lecture.createRow(List.of(
 					ChairScheduler.DATE_FORMAT.format(session),
 					"13:00",
@@ -757,7 +754,7 @@ public enum BaselineAxiumReport {
 		}
 		
 		LocalDate start = LocalDate.of(reader.getAcademicCalendar().startYear, Month.JULY, 10);
-		Map<PerioSession, List<Student>> d3s = Student.getStudentsSorted().stream().filter(Student::isD3).collect(Collectors.groupingBy(s -> s.d3perio));
+		Map<PerioSession, List<Student>> d3s = model.getStudentsSorted(Student::isD3).stream().collect(Collectors.groupingBy(s -> s.d3perio));
 		for(PerioSession session : d3s.keySet()) {
 
 			String startTime;
@@ -786,7 +783,7 @@ public enum BaselineAxiumReport {
 		}
 	}
 	
-	public static void generateHuddle(SODExcelFactory factory, XOGridReader reader) {
+	public static void generateHuddle(SODExcelFactory factory, XOGridReader reader, ScheduleModel model) {
 		SODExcelFactory huddle = factory.createSheet("Huddle");
 		SODExcelFactory huddleByPractice = factory.createSheet("Huddle Dates");
 		Map<GroupPractice, List<LocalDate>> huddles = reader.getHuddleDatesAll();
@@ -795,7 +792,7 @@ public enum BaselineAxiumReport {
 			huddleByPractice.createRow("GP-" + p);
 			for(LocalDate d : huddles.get(p)) {
 				huddleByPractice.createCell(d);
-				for(Student s : p.getClinicStudents()) {
+				for(Student s : model.getStudentsSorted(s -> s.practice == p && (s.isD3() || s.isD4() || s.isID3() || s.isID4()))) {
 					huddle.createRow(List.of(
 						ChairScheduler.DATE_FORMAT.format(d),
 						"08:30",
@@ -16,27 +16,36 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 
 import ucsf.sod.objects.DatedSession;
 import ucsf.sod.objects.GenericPeriod;
 import ucsf.sod.objects.GenericSession;
 import ucsf.sod.objects.Period;
+import ucsf.sod.objects.SessionIndex;
 import ucsf.sod.util.SODDateUtils;
 import ucsf.sod.util.SODExcelFactory;
 import ucsf.sod.util.SODUtil;
+import ucsf.sod.util.SessionTable;
+import ucsf.sod.xo.RandomStreams.Phase;
 import ucsf.sod.xo.ChairScheduler.ChairAssignment;
 import ucsf.sod.xo.ChairScheduler.ChairMapper;
 import ucsf.sod.xo.ChairScheduler.ChairPosition;
-import ucsf.sod.xo.XOGridUtils.ClinicStatus;
-import ucsf.sod.xo.XOGridUtils.ClinicStatus.OpenMode;
 import ucsf.sod.xo.calendar.AcademicCalendar;
 import ucsf.sod.xo.calendar.AcademicCalendar.Quarter;
 import ucsf.sod.xo.objects.GroupPractice;
@@ -46,6 +55,10 @@ import ucsf.sod.xo.objects.Student;
 import ucsf.sod.xo.objects.Student.UpperLower;
 import ucsf.sod.xo.scheduler.CapacityScenario;
 import ucsf.sod.xo.scheduler.ERNPEScheduler;
+import ucsf.sod.xo.scheduler.ERNPEScheduler.Engine;
+import ucsf.sod.xo.scheduler.Scheduler.Strategy;
+import ucsf.sod.xo.scheduler.SchedulerPortfolio;
+import ucsf.sod.xo.scheduler.SchedulerPortfolio.Run;
 import ucsf.sod.xo.scheduler.Pairing;
 import ucsf.sod.xo.scheduler.PairingType;
 import ucsf.sod.xo.scheduler.CapacityScenario.ScenarioMode;
@@ -63,19 +76,75 @@ public class BaselineSchedule2023 {
 			System.err.println("Future flag not set; setting AcademicCalendar to " + AcademicCalendar.CURRENT_YEAR);
 		}
 		
-		XOGridReader reader = XOGridReader2023.of(SODUtil.openWorkbook(xoGridFilePath));
+		XOGridReader reader = XOGridReader2023.of(xoGridFilePath);
 		System.out.println("X-O Grids Loaded");
 		
 		//XOGridOptimizer.countsWithLink(reader).forEach((s, i) -> System.out.println(s.id + "\t" + s.first + "\t" + s.practice + "\t" + i));
 		//XOGridOptimizer.printKeyDates(reader);
 		
-		SODExcelFactory domestic = new BaselineSchedule2023().generate(reader);
+		boolean parallel = args.length > 3 && Boolean.parseBoolean(args[3]);
+		Engine engine = args.length > 4 ? Engine.valueOf(args[4]) : Engine.ROUNDS;
+		int portfolioRuns = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+		Strategy strategy = args.length > 6 ? Strategy.valueOf(args[6]) : Strategy.GREEDY;
+		SODExcelFactory domestic = new BaselineSchedule2023(XOGridUtils.SEED, parallel).withEngine(engine).withStrategy(strategy).withPortfolio(portfolioRuns).generate(reader);
 		File f = SODUtil.getTimestampedFile(statisticsDirPath, outputFileName, "xlsx");
 		domestic.export(f);
 		Desktop.getDesktop().open(f);
 	}
+
+	private final RandomStreams streams;
+	private final boolean parallel;
+	private Engine engine = Engine.ROUNDS;
+	private Strategy strategy = Strategy.GREEDY;
+	private int portfolioRuns = 1;
+	private ExecutorService portfolios = null; // runs of the portfolios of the practices running concurrently, see forEachPractice()
+
+	public BaselineSchedule2023() {
+		this(XOGridUtils.SEED, false);
+	}
+
+	/**
+	 * @param seed seed the random streams of the schedule are derived from
+	 * @param parallel whether to generate the practices concurrently; the schedule is the same either way
+	 */
+	public BaselineSchedule2023(long seed, boolean parallel) {
+		this.streams = RandomStreams.of(seed);
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * @param engine how the ER and NPE schedules of each practice are solved
+	 */
+	public BaselineSchedule2023 withEngine(Engine engine) {
+		this.engine = engine;
+		return this;
+	}
+	
+	/**
+	 * @param strategy how each round of the ROUNDS engine assigns the sessions of the ER and NPE schedules
+	 */
+	public BaselineSchedule2023 withStrategy(Strategy strategy) {
+		this.strategy = strategy;
+		return this;
+	}
+	
+	/**
+	 * @param runs number of runs of each ER and NPE schedule, keeping the best by SchedulerPortfolio; 1 for a single run
+	 */
+	public BaselineSchedule2023 withPortfolio(int runs) {
+		this.portfolioRuns = runs;
+		return this;
+	}
 	
 	public SODExcelFactory generate(XOGridReader reader) throws IOException {
+		return generate(reader, reader.getModel());
+	}
+	
+	/**
+	 * @param reader reader giving the calendar of the grid
+	 * @param model students and rotations to schedule, such as a what-if version of reader.getModel()
+	 */
+	public SODExcelFactory generate(XOGridReader reader, ScheduleModel model) throws IOException {
 		LocalDate startDate = reader.getFirstDate();
 		{
 			DayOfWeek day = startDate.getDayOfWeek();
@@ -86,14 +155,84 @@ public class BaselineSchedule2023 {
 		LocalDate endDate = SODDateUtils.ceilingToDayOfWeek(reader.getLastDate(), DayOfWeek.FRIDAY);
 		AcademicCalendar calendar = reader.getAcademicCalendar();
 		
-		Map<DatedSession, Map<GroupPractice, List<Pairing>>> dailyWorkforce = new TreeMap<DatedSession, Map<GroupPractice, List<Pairing>>>();
-		Map<DatedSession, Map<GroupPractice, Map<ChairPosition, ChairAssignment>>> dailyLayout = new TreeMap<DatedSession, Map<GroupPractice, Map<ChairPosition, ChairAssignment>>>();
-		generatePredoc(reader, startDate, endDate, dailyWorkforce, dailyLayout);		
-
-		Map<DatedSession, List<Pairing>> dailyPerioWorkforce = new TreeMap<DatedSession, List<Pairing>>();
-		Map<DatedSession, Map<ChairPosition, ChairAssignment>> dailyPerioLayout = new TreeMap<DatedSession, Map<ChairPosition, ChairAssignment>>();
-		generatePerio(reader, startDate, endDate, calendar, dailyPerioWorkforce, dailyPerioLayout);
-
+		sessions = SessionIndex.of(startDate, endDate);
+		dailyWorkforce = new SessionTable<Map<GroupPractice, List<Pairing>>>(sessions);
+		dailyLayout = new SessionTable<Map<GroupPractice, Map<ChairPosition, ChairAssignment>>>(sessions);
+		dailyPerioWorkforce = new SessionTable<List<Pairing>>(sessions);
+		dailyPerioLayout = new SessionTable<Map<ChairPosition, ChairAssignment>>(sessions);
+		erRotation = new SessionTable<Map<GroupPractice, Student>>(sessions);
+		npvRotation = new SessionTable<Map<GroupPractice, Student>>(sessions);
+		generatePredoc(reader, model, XOGridUtils.ALL_PRACTICES, startDate, endDate, date -> true, dailyWorkforce, dailyLayout);		
+		generatePerio(reader, model, startDate, endDate, calendar, dailyPerioWorkforce, dailyPerioLayout);
+		return report(reader, model, (practice, date) -> true);
+	}
+	
+	/**
+	 * Recomputes only the sessions in the weeks and practices affected by the changes of a reingested X-O grid,
+	 * keeping every other session of the last run. ER, NPE, and the chair balancing between linked students
+	 * only move assignments among the recomputed sessions.
+	 * @param reader reader the last run was generated from, after XOGridReader.reingest()
+	 * @param changes changes returned by XOGridReader.reingest()
+	 */
+	public SODExcelFactory regenerate(XOGridReader reader, XOGridChanges changes) throws IOException {
+		if(sessions == null) {
+			throw new IllegalStateException("generate() has to run before regenerate()");
+		}
+		
+		AcademicCalendar calendar = reader.getAcademicCalendar();
+		ScheduleModel model = reader.getModel();
+		Map<GroupPractice, Set<LocalDate>> affected = changes.getAffectedWeeks();
+		Set<LocalDate> weeks = new TreeSet<LocalDate>();
+		for(GroupPractice practice : affected.keySet()) {
+			Set<LocalDate> _weeks = affected.get(practice);
+			Predicate<LocalDate> inScope = date -> _weeks.contains(SODDateUtils.floorToLastMonday(date));
+			discardSessions(practice, inScope);
+			generatePredoc(
+				reader,
+				model,
+				List.of(practice),
+				Collections.min(_weeks),
+				SODDateUtils.ceilingToDayOfWeek(Collections.max(_weeks), DayOfWeek.FRIDAY),
+				inScope,
+				dailyWorkforce,
+				dailyLayout
+			);
+			weeks.addAll(_weeks);
+		}
+		
+		for(LocalDate week : weeks) {
+			dailyPerioLayout.keySet().removeIf(session -> SODDateUtils.floorToLastMonday(session.date).equals(week));
+			generatePerio(reader, model, week, SODDateUtils.ceilingToDayOfWeek(week, DayOfWeek.FRIDAY), calendar, dailyPerioWorkforce, dailyPerioLayout);
+		}
+		
+		return report(reader, model, (practice, date) -> affected.getOrDefault(practice, Set.of()).contains(SODDateUtils.floorToLastMonday(date)));
+	}
+	
+	/**
+	 * Removes everything generated for the practice on the dates in scope
+	 */
+	private void discardSessions(GroupPractice practice, Predicate<LocalDate> inScope) {
+		for(Map<DatedSession, ? extends Map<GroupPractice, ?>> sessions : List.of(dailyWorkforce, dailyLayout, erRotation, npvRotation)) {
+			sessions.entrySet().removeIf(e -> {
+				if(!inScope.test(e.getKey().date)) {
+					return false;
+				}
+				e.getValue().remove(practice);
+				return e.getValue().isEmpty(); // as if no practice had been generated in the session
+			});
+		}
+		orphanPairings.get(practice).keySet().removeIf(session -> inScope.test(session.date));
+		d2ProviderCount.forEach((student, sessions) -> {
+			if(student.practice == practice) {
+				sessions.removeIf(session -> inScope.test(session.date));
+			}
+		});
+	}
+	
+	/**
+	 * @param rebalance whether the chairs of a practice on a date can be swapped between linked students
+	 */
+	private SODExcelFactory report(XOGridReader reader, ScheduleModel model, BiPredicate<GroupPractice, LocalDate> rebalance) throws IOException {
 		{
 			Map<Student, List<ChairAssignment>> assignmentsByStudent = 
 				dailyLayout.entrySet().stream() 					// every session
@@ -134,20 +273,12 @@ public class BaselineSchedule2023 {
 				}
 			}
 			
-			balanceByGroupPractice(assignmentsByStudent);
-			
-			// TODO: make balanceByGroupPractice() update the given map so that this call doesn't have to happen again
-			assignmentsByStudent = 
-				dailyLayout.entrySet().stream() 					// every session
-					.flatMap(e -> e.getValue().entrySet().stream()) // every group practice 
-					.flatMap(e -> e.getValue().entrySet().stream()) // every chair position
-					.map(e -> e.getValue()) 						// get the chair assignment
-					.filter(c -> c != null)
-					.collect(Collectors.groupingBy(
-						c -> c.getAssigned(),
-						TreeMap::new,
-						Collectors.toList()
-					));
+			for(GroupPractice practice : XOGridUtils.ALL_PRACTICES) {
+				if(practice == GroupPractice.F) {
+					continue; // no D3s to link with, as before
+				}
+				ChairBalancer.of(assignmentsByStudent, practice, c -> rebalance.test(practice, c.session.date), streams.get(Phase.BALANCE, practice)).balance();
+			}
 			
 			assignmentsByGroupPractice = assignmentsByStudent.entrySet().stream()
 				.collect(Collectors.groupingBy(
@@ -183,6 +314,7 @@ public class BaselineSchedule2023 {
 			dailyPerioWorkforce,
 			dailyPerioLayout,
 			reader,
+			model,
 			npvRotation,
 			erRotation,
 			orphanPairings
@@ -199,203 +331,298 @@ public class BaselineSchedule2023 {
 		return SODDateUtils.dateIsOnOrAfter(date, d2ClinicBegins) && (date.getDayOfWeek() == DayOfWeek.WEDNESDAY || date.getDayOfWeek() == DayOfWeek.FRIDAY);
 	}
 	
-	private Map<Student, List<DatedSession>> d2ProviderCount = new TreeMap<Student, List<DatedSession>>();
+	// Practices add to the counts of their own D2 students only, and may do so concurrently
+	private Map<Student, List<DatedSession>> d2ProviderCount = new ConcurrentSkipListMap<Student, List<DatedSession>>();
+	
+	// Sessions of the last run, kept for regenerate(); indexed from its first to its last date
+	private SessionIndex sessions = null;
+	private Map<DatedSession, Map<GroupPractice, List<Pairing>>> dailyWorkforce;
+	private Map<DatedSession, Map<GroupPractice, Map<ChairPosition, ChairAssignment>>> dailyLayout;
+	private Map<DatedSession, List<Pairing>> dailyPerioWorkforce;
+	private Map<DatedSession, Map<ChairPosition, ChairAssignment>> dailyPerioLayout;
 
+	/**
+	 * @param inScope dates between startDate and endDate to generate; ER, NPE, and chairs are only assigned for sessions on these dates
+	 */
 	private void generatePredoc(
 		XOGridReader reader, 
+		ScheduleModel model,
+		List<GroupPractice> practices,
 		LocalDate startDate, 
 		LocalDate endDate, 
+		Predicate<LocalDate> inScope,
 		Map<DatedSession, Map<GroupPractice, List<Pairing>>> dailyWorkforce, 
 		Map<DatedSession, Map<GroupPractice, Map<ChairPosition, ChairAssignment>>> dailyLayout 
 	) {
 
- 		AcademicCalendar calendar = reader.getAcademicCalendar();
-		for(GroupPractice practice : XOGridUtils.ALL_PRACTICES) {
-		//for(GroupPractice practice : List.of(GroupPractice.F)) {
+		// Pair up the students of each practice
+		Map<GroupPractice, Map<DatedSession, List<Pairing>>> pairings = forEachPractice(practices, practice -> pairPractice(reader, model, practice, startDate, endDate, inScope));
+
+		// A practice assigns ER, NPE, and chairs over the sessions generated before it and by it, as when the practices are generated one after the other
+		Map<GroupPractice, Set<DatedSession>> generated = XOGridUtils.createGroupPracticeEnumMap();
+		Set<DatedSession> sessions = new HashSet<DatedSession>(dailyWorkforce.keySet());
+		for(GroupPractice practice : practices) {
+			merge(dailyWorkforce, practice, pairings.get(practice));
+			sessions.addAll(pairings.get(practice).keySet());
+			generated.put(practice, Set.copyOf(sessions));
+		}
+
+		Map<GroupPractice, PracticeSchedule> schedules = forEachPractice(practices, practice -> schedulePractice(reader, practice, session -> inScope.test(session.date) && generated.get(practice).contains(session), dailyWorkforce));
+		for(GroupPractice practice : practices) {
+			PracticeSchedule schedule = schedules.get(practice);
+			merge(erRotation, practice, schedule.er);
+			merge(npvRotation, practice, schedule.npe);
+			merge(dailyLayout, practice, schedule.layout);
+		}
+	}
+
+	private static <V> void merge(Map<DatedSession, Map<GroupPractice, V>> table, GroupPractice practice, Map<DatedSession, V> values) {
+		values.forEach((session, value) -> table.computeIfAbsent(session, s -> XOGridUtils.createGroupPracticeEnumMap()).put(practice, value));
+	}
+
+	/**
+	 * Runs the task of each practice; in parallel mode, the tasks run concurrently in a fork-join pool, and their portfolios share one pool
+	 * sized to the processors rather than each starting its own. The units of work of a task draw from their own streams, so the schedule
+	 * does not depend on the order or the threads the tasks run on.
+	 * @return the result of each practice
+	 */
+	private <T> Map<GroupPractice, T> forEachPractice(List<GroupPractice> practices, Function<GroupPractice, T> task) {
+		Map<GroupPractice, T> results = XOGridUtils.createGroupPracticeEnumMap();
+		if(!parallel || practices.size() < 2) {
+			for(GroupPractice practice : practices) {
+				results.put(practice, task.apply(practice));
+			}
+			return results;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Math.min(practices.size(), Runtime.getRuntime().availableProcessors()));
+		if(portfolioRuns > 1) {
+			portfolios = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+		try {
+			Map<GroupPractice, ForkJoinTask<T>> tasks = XOGridUtils.createGroupPracticeEnumMap();
+			for(GroupPractice practice : practices) {
+				tasks.put(practice, pool.submit(() -> task.apply(practice)));
+			}
+			for(GroupPractice practice : practices) {
+				results.put(practice, tasks.get(practice).join());
+			}
+		} finally {
+			pool.shutdown();
+			if(portfolios != null) {
+				portfolios.shutdownNow();
+				portfolios = null;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return the finalized pairs of the practice for each session between startDate and endDate in scope
+	 */
+	private Map<DatedSession, List<Pairing>> pairPractice(XOGridReader reader, ScheduleModel model, GroupPractice practice, LocalDate startDate, LocalDate endDate, Predicate<LocalDate> inScope) {
+
+		AcademicCalendar calendar = reader.getAcademicCalendar();
+		Map<DatedSession, List<Pairing>> pairings = new TreeMap<DatedSession, List<Pairing>>();
+
+		System.out.println("\n*** Generating schedule for GP-" + practice + " ***\n");
+		
+		// Iterate through all the dates
+		for(LocalDate date = startDate; SODDateUtils.dateIsOnOrBefore(date, endDate); date = date.plusDays(date.getDayOfWeek() == DayOfWeek.FRIDAY ? 3 : 1)) {
+			if(!inScope.test(date)) {
+				continue;
+			}
 			
-			System.out.println("\n*** Generating schedule for GP-" + practice + " ***\n");
+			int day = calendar.indexOf(date);
+			if(!calendar.isClinicDay(day)) {
+				System.out.println("Clinic is closed on " + date + "\n");
+				continue;
+			}
 			
-			// Iterate through all the dates
-			for(LocalDate date = startDate; SODDateUtils.dateIsOnOrBefore(date, endDate); date = date.plusDays(date.getDayOfWeek() == DayOfWeek.FRIDAY ? 3 : 1)) {
-				ClinicStatus status = calendar.get(date);
-				if(status.status == OpenMode.CLOSED) {
-					System.out.println("Clinic is closed on " + date + "\n");
+			Set<Student> students = model.getStudentsByPractice(Rotation.CLINIC, practice, date);
+			for(GenericPeriod period : List.of(GenericPeriod.GENERIC_AM, GenericPeriod.GENERIC_PM)) {
+
+				// Optimize if we know there are no students
+				if(!calendar.isOpen(day, period)) {
+					continue;
+				} else if(reader.inHuddleDate(practice, date, period)) {
 					continue;
 				}
 				
-				Set<Student> students = Rotation.CLINIC.getStudentsByPractice(practice, date);
-				for(GenericPeriod period : List.of(GenericPeriod.GENERIC_AM, GenericPeriod.GENERIC_PM)) {
+				// Filter out the students that are not available
+				Collection<Student> remaining = students.stream().filter(getOnlyAvailableStudentsSelector(reader, model, date, period)).collect(Collectors.toCollection(TreeSet::new));
+				
+				// Add D2 students if they are available
+				if(canD2sProvide(date, reader.getD2ClinicBegins())) { // TODO: push one week later
+					model.getStudentsStream(practice, Student::isD2)
+						.filter(s -> remaining.contains(s.getPrimaryLink()) || remaining.contains(s.getSecondaryLink()))
+						.forEach(s -> remaining.add(s));
+				}
+				
+				// Create initial pairing
+				List<Pairing> pairs = Pairing.pairUp(reader.getStudentIndex(), remaining);
 
-					// Optimize if we know there are no students
-					if((period.isAM() && status.status == OpenMode.PM_ONLY) ||
-					   (period.isPM() && status.status == OpenMode.AM_ONLY)
-					) {
-						continue;
-					} else if(reader.inHuddleDate(practice, date, period)) {
-						continue;
-					}
+				// Evaluate capacity is met and finalize pairing accordingly
+				int chairCapacity = 13;
+				/*
+				if(reader.isD4LectureDate(date) && period.isAM()) {
+					chairCapacity = 8;
 					
-					// Filter out the students that are not available
-					Collection<Student> remaining = students.stream().filter(getOnlyAvailableStudentsSelector(reader, date, period)).collect(Collectors.toCollection(TreeSet::new));
-					
-					// Add D2 students if they are available
-					if(canD2sProvide(date, reader.getD2ClinicBegins())) { // TODO: push one week later
-						practice.getStudentsStream(Student::isD2)
-							.filter(s -> remaining.contains(s.getPrimaryLink()) || remaining.contains(s.getSecondaryLink()))
-							.forEach(s -> remaining.add(s));
+					for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
+						if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
+							pairs.remove(p);
+							pairs.add(p.correctType());
+						}
+					}
+				} else if(date.getDayOfWeek() == DayOfWeek.FRIDAY && period.isPM()) {
+					chairCapacity = 8;
+					if(practice == GroupPractice.F) {
+						chairCapacity = 20;
 					}
 					
-					// Create initial pairing
-					List<Pairing> pairs = Pairing.pairUp(remaining);
-
-					// Evaluate capacity is met and finalize pairing accordingly
-					int chairCapacity = 13;
-					/*
-					if(reader.isD4LectureDate(date) && period.isAM()) {
-						chairCapacity = 8;
-						
-						for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
-							if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
-								pairs.remove(p);
-								pairs.add(p.correctType());
-							}
-						}
-					} else if(date.getDayOfWeek() == DayOfWeek.FRIDAY && period.isPM()) {
-						chairCapacity = 8;
-						if(practice == GroupPractice.F) {
-							chairCapacity = 20;
+					for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
+						if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
+							pairs.remove(p);
+							pairs.add(p.correctType());
 						}
-						
-						for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
-							if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
-								pairs.remove(p);
-								pairs.add(p.correctType());
-							}
-						}
-					} else if(reader.isClinicBreak(date)) {
-						chairCapacity = 8;
-						if(practice == GroupPractice.F) {
-							chairCapacity = 12;
-						}
-						
-						for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
-							if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
-								pairs.remove(p);
-								pairs.add(p.correctType());
-							}
-						}
-					} else {
-						chairCapacity = 13;
 					}
-					*/
+				} else if(reader.isClinicBreak(date)) {
+					chairCapacity = 8;
+					if(practice == GroupPractice.F) {
+						chairCapacity = 12;
+					}
 					
-					pairs = finalizePairings(
-						pairs, 
-						reader, 
-						date, 
-						period,
-						chairCapacity,
-						practice == GroupPractice.F ? getScenarioSelectorInternational(reader, date, period, chairCapacity) : getScenarioSelectorDomestic(reader, date, period, chairCapacity) 
-					);
-
-					DatedSession dSession = DatedSession.of(date, period);
-					Map<GroupPractice, List<Pairing>> map = dailyWorkforce.get(dSession);
-					if(map == null) {
-						dailyWorkforce.put(dSession, map = XOGridUtils.createGroupPracticeEnumMap());
+					for(Pairing p : pairs.stream().filter(p -> p.type == PairingType.ORPHAN).collect(Collectors.toList())) {
+						if(p.getSoloStudent().getPartner() == Student.PLACEHOLDER) {
+							pairs.remove(p);
+							pairs.add(p.correctType());
+						}
 					}
-					map.put(practice, pairs);
+				} else {
+					chairCapacity = 13;
 				}
+				*/
+				
+				pairs = finalizePairings(
+					pairs, 
+					reader, 
+					date, 
+					period,
+					chairCapacity,
+					streams.get(Phase.CAPACITY, practice, DatedSession.of(date, period)),
+					practice == GroupPractice.F ? getScenarioSelectorInternational(reader, date, period, chairCapacity) : getScenarioSelectorDomestic(reader, date, period, chairCapacity) 
+				);
+
+				pairings.put(DatedSession.of(date, period), pairs);
 			}
+		}
+		return pairings;
+	}
+
+	private static class PracticeSchedule {
+		public final Map<DatedSession, Student> er;
+		public final Map<DatedSession, Student> npe;
+		public final Map<DatedSession, Map<ChairPosition, ChairAssignment>> layout = new TreeMap<DatedSession, Map<ChairPosition, ChairAssignment>>();
+		
+		public PracticeSchedule(Map<DatedSession, Student> er, Map<DatedSession, Student> npe) {
+			this.er = er;
+			this.npe = npe;
+		}
+	}
+
+	/**
+	 * Assigns ER, NPE, and the chairs of the practice on the sessions in scope
+	 */
+	private PracticeSchedule schedulePractice(XOGridReader reader, GroupPractice practice, Predicate<DatedSession> inScope, Map<DatedSession, Map<GroupPractice, List<Pairing>>> dailyWorkforce) {
 
-			// Assign ER and NPE for the practice
-			Map<DatedSession, Collection<Pairing>> allpairs = dailyWorkforce.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getOrDefault(practice, List.of())));
-			assignERAndNPE(practice, allpairs, reader);
+		// Assign ER and NPE for the practice
+		Map<DatedSession, Collection<Pairing>> allpairs = dailyWorkforce.entrySet().stream().filter(e -> inScope.test(e.getKey())).collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getOrDefault(practice, List.of())));
+		Pair<Map<DatedSession, Student>, Map<DatedSession, Student>> providers = assignERAndNPE(practice, allpairs, reader);
+		PracticeSchedule schedule = new PracticeSchedule(providers.getLeft(), providers.getRight());
+		
+		// Assign the chairs
+		for(DatedSession date : dailyWorkforce.keySet()) {
+			if(!inScope.test(date)) {
+				continue;
+			}
 			
-			// Assign the chairs
-			for(DatedSession date : dailyWorkforce.keySet()) {
-				List<Pairing> pairs = dailyWorkforce.get(date).getOrDefault(practice, List.of());
-				if(pairs.size() == 0) {
-					System.err.println("There are no chairs to assign on " + date + " " + date.session.getPeriod().getMeridian());
-				} else {
-					
-					// Sort the ER, NPE chairs first; then, prioritize D2 pairings first when applicable
-					Comparator<Pairing> comparator = ER_NPE_Priority;
-					if(canD2sProvide(date.date, reader.getD2ClinicBegins())) {
-						comparator = comparator.thenComparing(d2PriorityBalanced);
+			List<Pairing> pairs = dailyWorkforce.get(date).getOrDefault(practice, List.of());
+			if(pairs.size() == 0) {
+				System.err.println("There are no chairs to assign on " + date + " " + date.session.getPeriod().getMeridian());
+			} else {
+				
+				// Sort the ER, NPE chairs first; then, prioritize D2 pairings first when applicable
+				Comparator<Pairing> comparator = ER_NPE_Priority;
+				if(canD2sProvide(date.date, reader.getD2ClinicBegins())) {
+					comparator = comparator.thenComparing(d2PriorityBalanced);
+				}
+				Collections.sort(pairs, comparator);
+				
+				//printPairings(pairs, date.date, date.getPeriod(), covidCoverage.getOrDefault(date, Student.PLACEHOLDER));
+				
+				Map<ChairPosition, ChairAssignment> floormap;
+				if(date.getDayOfWeek() == DayOfWeek.FRIDAY && date.isPM() && date.date.isBefore(reader.getSpringQuarterStart())) {
+					ChairMapper friMapper;
+					Quarter q = AcademicCalendar.CURRENT_YEAR.toQuarter(date.date);
+					switch(q) {
+					case SUMMER:
+						friMapper = ChairMapper.ofIterativeFull(ChairScheduler.friPMChairMapperSummer.get(practice)); break;
+					case FALL:
+					case WINTER:
+						friMapper = ChairMapper.ofIterativeFull(ChairScheduler.friPMChairMapper.get(practice)); break;
+					case SPRING:
+						friMapper = ChairMapper.ofIterativeFull(ChairScheduler.chairMapper.get(practice)); break;
+					default:
+						throw new RuntimeException("Unexpected quarter for ["+date+"]: " + q);
 					}
-					Collections.sort(pairs, comparator);
-					
-					//printPairings(pairs, date.date, date.getPeriod(), covidCoverage.getOrDefault(date, Student.PLACEHOLDER));
-					
-					Map<ChairPosition, ChairAssignment> floormap;
-					if(date.getDayOfWeek() == DayOfWeek.FRIDAY && date.isPM() && date.date.isBefore(reader.getSpringQuarterStart())) {
-						ChairMapper friMapper;
-						Quarter q = AcademicCalendar.CURRENT_YEAR.toQuarter(date.date);
-						switch(q) {
-						case SUMMER:
-							friMapper = ChairMapper.ofIterativeFull(ChairScheduler.friPMChairMapperSummer.get(practice)); break;
-						case FALL:
-						case WINTER:
-							friMapper = ChairMapper.ofIterativeFull(ChairScheduler.friPMChairMapper.get(practice)); break;
-						case SPRING:
-							friMapper = ChairMapper.ofIterativeFull(ChairScheduler.chairMapper.get(practice)); break;
-						default:
-							throw new RuntimeException("Unexpected quarter for ["+date+"]: " + q);
-						}
 
-						floormap = ChairScheduler.FRI_PM.assignChairs(date, pairs, friMapper, p -> getProviderAndLabel(p, practice, date, reader.getPriority(date.date)));
-					} else {
-						floormap = ChairScheduler.DEFAULT.assignChairs(date, pairs, ChairMapper.ofIterativeFull(ChairScheduler.chairMapper.get(practice)), p -> getProviderAndLabel(p, practice, date, reader.getPriority(date.date)));
+					floormap = ChairScheduler.FRI_PM.assignChairs(date, pairs, friMapper, p -> getProviderAndLabel(p, practice, date, reader.getPriority(date.date), schedule.er, schedule.npe));
+				} else {
+					floormap = ChairScheduler.DEFAULT.assignChairs(date, pairs, ChairMapper.ofIterativeFull(ChairScheduler.chairMapper.get(practice)), p -> getProviderAndLabel(p, practice, date, reader.getPriority(date.date), schedule.er, schedule.npe));
+				}
+				
+				// Floormap count being less than pairs count means there are pairs that do not get a chair 
+				if(floormap.size() < pairs.size()) {
+					List<Pairing> orphans = new ArrayList<Pairing>(pairs);
+					if(!orphans.removeAll(floormap.values().stream().map(a -> a.pairing).collect(Collectors.toList()))) {
+						throw new RuntimeException("List was not modified");
 					}
 					
-					// Floormap count being less than pairs count means there are pairs that do not get a chair 
-					if(floormap.size() < pairs.size()) {
-						List<Pairing> orphans = new ArrayList<Pairing>(pairs);
-						if(!orphans.removeAll(floormap.values().stream().map(a -> a.pairing).collect(Collectors.toList()))) {
-							throw new RuntimeException("List was not modified");
-						}
-						
-						Map<DatedSession, List<Pairing>> map = orphanPairings.get(practice);
-						List<Pairing> l = map.get(date);
-						if(l != null) {
-							System.err.println("Replacing orphan list on " + date);
-							orphans.addAll(l);
-						}
-						map.put(date, orphans);	
+					Map<DatedSession, List<Pairing>> map = orphanPairings.get(practice);
+					List<Pairing> l = map.get(date);
+					if(l != null) {
+						System.err.println("Replacing orphan list on " + date);
+						orphans.addAll(l);
 					}
-					
-					// Count all the D2 chairs assigned
-					floormap.values().forEach(a -> {
-						if(a != null) {
-							Student _student = a.getAssigned();
-							if(_student.isD2()) {
-								List<DatedSession> l = d2ProviderCount.get(_student);
-								if(l == null) {
-									d2ProviderCount.put(_student, l = new ArrayList<DatedSession>());
-								}
-								l.add(date);
+					map.put(date, orphans);	
+				}
+				
+				// Count all the D2 chairs assigned
+				floormap.values().forEach(a -> {
+					if(a != null) {
+						Student _student = a.getAssigned();
+						if(_student.isD2()) {
+							List<DatedSession> l = d2ProviderCount.get(_student);
+							if(l == null) {
+								d2ProviderCount.put(_student, l = new ArrayList<DatedSession>());
 							}
+							l.add(date);
 						}
-					});
-
-					Map<GroupPractice, Map<ChairPosition, ChairAssignment>> layout = dailyLayout.get(date);
-					if(layout == null) {
-						dailyLayout.put(date, layout = XOGridUtils.createGroupPracticeEnumMap());
 					}
-					
-					
-					layout.put(practice, floormap);
-				}
+				});
+
+				schedule.layout.put(date, floormap);
 			}
 		}
+		return schedule;
 	}
 
-	private void generatePerio(XOGridReader reader, LocalDate startDate, LocalDate endDate, AcademicCalendar calendar, Map<DatedSession, List<Pairing>> dailyWorkforce, Map<DatedSession, Map<ChairPosition, ChairAssignment>> dailyLayout) {
+	private void generatePerio(XOGridReader reader, ScheduleModel model, LocalDate startDate, LocalDate endDate, AcademicCalendar calendar, Map<DatedSession, List<Pairing>> dailyWorkforce, Map<DatedSession, Map<ChairPosition, ChairAssignment>> dailyLayout) {
 
 		// Figure out which students are in which session
 		Map<PerioSession, Set<Student>> perioInfo = new HashMap<PerioSession, Set<Student>>();
 		for(GroupPractice p : XOGridUtils.PRACTICES) {
-			p.getStudentsStream(s -> s.isD3() || s.isID3()).forEach(s -> {
+			model.getStudentsStream(p, s -> s.isD3() || s.isID3()).forEach(s -> {
 				PerioSession session = s.d3perio;
 				Set<Student> _s = perioInfo.get(session);
 				if(_s == null) {
@@ -407,8 +634,7 @@ public class BaselineSchedule2023 {
 		
 		for(LocalDate date = startDate; SODDateUtils.dateIsOnOrBefore(date, endDate); date = date.plusDays(date.getDayOfWeek() == DayOfWeek.FRIDAY ? 3 : 1)) {
 			
-			ClinicStatus status = calendar.get(date);
-			if(status.status == OpenMode.CLOSED) {
+			if(!calendar.isClinicDay(calendar.indexOf(date))) {
 				System.out.println("Clinic is closed on " + date + "\n");
 				continue;
 			}
@@ -429,7 +655,7 @@ public class BaselineSchedule2023 {
 					   (_s.isID3() && date.isBefore(reader.getID3PerioClinicBegins()))
 					) {
 						continue;
-					} else if(reader.getRotationByStudent(_s, date, null) == Rotation.CLINIC) {
+					} else if(model.getRotation(_s, date) == Rotation.CLINIC) {
 						if(reader.getPriority(date) == UpperLower.UPPER && _s.isUpperStudent()) {
 							pairs.add(Pairing.of(_s, Student.PLACEHOLDER, PairingType.ORPHAN));
 						} else if(reader.getPriority(date) == UpperLower.LOWER && _s.isLowerStudent()) {
@@ -452,10 +678,13 @@ public class BaselineSchedule2023 {
 		}
 	}
 
-	private Map<DatedSession, Map<GroupPractice, Student>> erRotation = new TreeMap<DatedSession, Map<GroupPractice, Student>>();
-	private Map<DatedSession, Map<GroupPractice, Student>> npvRotation = new TreeMap<DatedSession, Map<GroupPractice, Student>>();
+	private Map<DatedSession, Map<GroupPractice, Student>> erRotation;
+	private Map<DatedSession, Map<GroupPractice, Student>> npvRotation;
 
-	private void assignERAndNPE(GroupPractice practice, Map<DatedSession, Collection<Pairing>> allpairs, XOGridReader reader) {
+	/**
+	 * @return the ER and the NPE provider of the practice on each session they are assigned
+	 */
+	private Pair<Map<DatedSession, Student>, Map<DatedSession, Student>> assignERAndNPE(GroupPractice practice, Map<DatedSession, Collection<Pairing>> allpairs, XOGridReader reader) {
 		
 		System.out.println("Generating ER schedule");
 		
@@ -578,21 +807,16 @@ public class BaselineSchedule2023 {
 			int index = 0;
 			Map<Pair<DayOfWeek, String>, List<GroupPractice>> erOrder = erRotationOrder.get(index);
 			AcademicCalendar calendar = reader.getAcademicCalendar();
-			LocalDate endDate = reader.getLastDate();
-			for(LocalDate date = reader.getFirstDate(); SODDateUtils.dateIsOnOrBefore(date, endDate); date = date.plusDays(date.getDayOfWeek() == DayOfWeek.FRIDAY ? 3 : 1)) {
-				ClinicStatus status = calendar.get(date);
-				if(status.status == OpenMode.CLOSED) {
-					continue;
-				}
+			int last = calendar.floorIndexOf(reader.getLastDate());
+			for(int day = calendar.nextClinicDay(reader.getFirstDate()); day >= 0 && day <= last; day = calendar.nextClinicDay(day + 1)) {
+				LocalDate date = calendar.getDate(day);
 				
 				//Set<Student> students = Rotation.CLINIC.getStudentsByPractice(practice, date);
 				for(GenericPeriod period : List.of(GenericPeriod.GENERIC_AM, GenericPeriod.GENERIC_PM)) {
 					boolean onER = erOrder.get(Pair.of(date.getDayOfWeek(), period.getMeridian())).contains(practice);
 					
 					// Optimize if we know there are no students
-					if((period.isAM() && status.status == OpenMode.PM_ONLY) ||
-					   (period.isPM() && status.status == OpenMode.AM_ONLY)
-					) {
+					if(!calendar.isOpen(day, period)) {
 						if(onER) {
 							System.err.println("GP-" + practice + " unable to provide students for " + date + " " + period.getMeridian() + " due to clinic closure");
 						}
@@ -647,51 +871,88 @@ public class BaselineSchedule2023 {
 		}		
 		System.out.println("Done determine dates responsible");
 		
-		ERNPEScheduler erScheduler = ERNPEScheduler.buildERScheduler(
-			practice, 
+		// Assignments of the practice kept from the last run, outside the sessions being regenerated
+		Map<DatedSession, Student> retainedER = retained(erRotation, practice);
+		Map<DatedSession, Student> retainedNPE = retained(npvRotation, practice);
+		
+		Map<DatedSession, Student> erAssignmentOrder = solve(
 			allpairs.entrySet().parallelStream().filter(e -> erAssignedSessions.contains(e.getKey())).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)),
-			ChairScheduler.getERMoratorium(reader),
-			s -> false,
-			session -> reader.getPriority(session.date)
+			ERNPEScheduler.ER_LABEL,
+			(pool, random) -> ERNPEScheduler.buildERScheduler(
+				practice, 
+				pool,
+				reader.getStudentIndex(),
+				ChairScheduler.getERMoratorium(reader),
+				s -> false,
+				session -> reader.getPriority(session.date),
+				random,
+				engine
+			).withRetained(retainedER),
+			streams.get(Phase.ER, practice)
 		);
-		Map<DatedSession, Student> erAssignmentOrder = erScheduler.schedule(); 
 		Map<Student, Integer> erCount = new TreeMap<Student, Integer>();
-		erAssignmentOrder.forEach((session, student) -> {
-			synchronized(erRotation) {
-				Map<GroupPractice, Student> m = erRotation.get(session);
-				if(m == null) {
-					erRotation.put(session, m = XOGridUtils.createGroupPracticeEnumMap());
-				}
-				m.put(practice, student);
-				erCount.put(student, (erCount.getOrDefault(student, 0) + 1));
-			}
-		});
+		erAssignmentOrder.forEach((session, student) -> erCount.put(student, (erCount.getOrDefault(student, 0) + 1)));
 		System.out.println("Generating ER schedule completed");
 
 		System.out.println("Generating NPE schedule for GP-"+practice);
-		ERNPEScheduler npeScheduler = ERNPEScheduler.buildNPEScheduler(
-			practice, 
+		Map<DatedSession, Student> npeAssignmentOrder = solve(
 			allpairs,
-			ChairScheduler.getNPEMoratorium(reader.getAcademicCalendar()),
-			s -> false,
-			session -> reader.getPriority(session.date)					
+			ERNPEScheduler.NPE_LABEL,
+			(pool, random) -> ERNPEScheduler.buildNPEScheduler(
+				practice, 
+				pool,
+				reader.getStudentIndex(),
+				ChairScheduler.getNPEMoratorium(reader.getAcademicCalendar()),
+				s -> false,
+				session -> reader.getPriority(session.date),
+				random,
+				engine
+			).withRetained(retainedNPE),
+			streams.get(Phase.NPE, practice)
 		);
-		
-		Map<DatedSession, Student> npeAssignmentOrder = npeScheduler.schedule();
 		//npeScheduler.getRemainingMap().forEach((s, i) -> System.err.println(s.id + "\t" + i));
 		Map<Student, Integer> npeCount = new TreeMap<Student, Integer>();
-		npeAssignmentOrder.forEach((session, student) -> {
-			synchronized(npvRotation) {
-				Map<GroupPractice, Student> m = npvRotation.get(session);
-				if(m == null) {
-					npvRotation.put(session, m = XOGridUtils.createGroupPracticeEnumMap());
-				}
-				m.put(practice, student);
-				npeCount.put(student, (npeCount.getOrDefault(student, 0) + 1));
-			}
-		});
+		npeAssignmentOrder.forEach((session, student) -> npeCount.put(student, (npeCount.getOrDefault(student, 0) + 1)));
 		//npeCount.forEach((s, i) -> System.err.println(s.id + "\t" + i));
 		System.out.println("Generating NPE schedule completed");
+		return Pair.of(erAssignmentOrder, npeAssignmentOrder);
+	}
+
+	/**
+	 * @return the student of the practice in each session of the rotation
+	 */
+	private static Map<DatedSession, Student> retained(Map<DatedSession, Map<GroupPractice, Student>> rotation, GroupPractice practice) {
+		Map<DatedSession, Student> m = new TreeMap<DatedSession, Student>();
+		rotation.forEach((session, practices) -> {
+			Student s = practices.get(practice);
+			if(s != null) {
+				m.put(session, s);
+			}
+		});
+		return m;
+	}
+
+	/**
+	 * Schedules the pool with one scheduler drawing from the stream or, with a portfolio, with the best of the runs over
+	 * copies of the pool, drawing from splits of the stream; the pool is labeled with the assignments kept either way
+	 */
+	private Map<DatedSession, Student> solve(Map<DatedSession, Collection<Pairing>> pool, String label, BiFunction<Map<DatedSession, Collection<Pairing>>, RandomGenerator, ERNPEScheduler> build, SplittableRandom random) {
+		if(portfolioRuns <= 1) {
+			return build.apply(pool, random).schedule(strategy);
+		}
+		
+		SchedulerPortfolio<DatedSession, Pairing, Student> portfolio = SchedulerPortfolio.<DatedSession, Pairing, Student>of(r -> build.apply(ERNPEScheduler.copyPool(pool), r), portfolioRuns).withStrategy(strategy);
+		if(portfolios != null) {
+			portfolio.withExecutor(portfolios);
+		} else {
+			portfolio.withThreads(parallel ? Runtime.getRuntime().availableProcessors() : 1);
+		}
+		Run<DatedSession, Pairing, Student> best = portfolio.run(random);
+		if(best == null) {
+			throw new RuntimeException("No run of the " + label + " portfolio completed");
+		}
+		ERNPEScheduler.label(pool, best.result, label);
+		return best.result;
 	}
 
 	private static class ChairStatistics {
@@ -715,163 +976,6 @@ public class BaselineSchedule2023 {
 		}
 	}
 	
-	private static enum AboveBelow {
-		D4_ABOVE,
-		D3_ABOVE,
-		NEITHER,
-		D3_BELOW,
-		D4_BELOW
-	}
-
-	/**
-	 * Rebalances chair assignments by student. Does not update student association to the chair assignment.
-	 * @param assignmentsByStudent
-	 */
-	private void balanceByGroupPractice(Map<Student, List<ChairAssignment>> assignmentsByStudent) {
-		Map<GroupPractice, Map<Student, List<ChairAssignment>>> assignmentsByGroupPractice = assignmentsByStudent.entrySet().stream()
-			.collect(Collectors.groupingBy(
-					e -> e.getKey().practice,
-					XOGridUtils::createGroupPracticeEnumMap,
-					Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)
-			));
-
-		for(GroupPractice p : XOGridUtils.ALL_PRACTICES) {
-			
-			if(p == GroupPractice.F) {
-				continue;
-			}
-			
-			Map<Student, List<ChairAssignment>> base = assignmentsByGroupPractice.get(p);
-			{
-				ChairStatistics d3 = ChairStatistics.of(base, e -> e.getKey().isD3() || e.getKey().isID3());
-				ChairStatistics d4 = ChairStatistics.of(base, e -> e.getKey().isD4() || e.getKey().isID4());
-				ChairStatistics all = ChairStatistics.of(base, e -> true);
-				
-				Map<AboveBelow, Set<Student>> sortedStudents = assignmentsByStudent.entrySet().stream().collect(
-					Collectors.groupingBy(
-						e -> {
-							Student s = e.getKey();
-							int size = e.getValue().size();
-							
-							if(s.isD3() || s.isID3()) {
-								if(size <= d3.oneStdDevBelow) {
-									return AboveBelow.D3_BELOW;
-								} else if(size > d3.oneStdDevAbove) {
-									return AboveBelow.D3_ABOVE;
-								} else {
-									return AboveBelow.NEITHER;
-								}
-							} else if(s.isD4() || s.isID4()) {
-								if(size <= d4.oneStdDevBelow) {
-									return AboveBelow.D4_BELOW;
-								} else if(size > d4.oneStdDevAbove) {
-									return AboveBelow.D4_ABOVE;
-								} else {
-									return AboveBelow.NEITHER;
-								}
-							} else if(s.isD2()) {
-								return AboveBelow.NEITHER;
-							} else {
-								throw new RuntimeException("Unexpected student for statistics: " + s);
-							}
-						},
-						Collectors.mapping(Map.Entry::getKey, Collectors.toSet())
-					)
-				);
-				
-				// Builds a tuple of Student, Needed to get to average, and Pool available to swap
-				List<Triple<Student, Integer, Integer>> swapNeeded = base.keySet().stream().filter(s -> {
-						if((s.isD3() || s.isID3()) && (sortedStudents.getOrDefault(AboveBelow.D3_BELOW, Set.of()).contains(s) && sortedStudents.getOrDefault(AboveBelow.D4_ABOVE, Set.of()).contains(s.getPrimaryLink()))) {
-							return true;
-						} else if((s.isD4() || s.isID4()) && (sortedStudents.getOrDefault(AboveBelow.D4_BELOW, Set.of()).contains(s) && sortedStudents.getOrDefault(AboveBelow.D3_ABOVE, Set.of()).contains(s.getPrimaryLink()))) {
-							return true;
-						}
-						
-						return false;
-					})
-					.map(s -> {
-						
-						ChairStatistics stats;
-						ChairStatistics link_stats;
-						if(s.isD3() || s.isID3()) {
-							stats = d3;
-							link_stats = d4;
-						} else if(s.isD4() || s.isID4()) {
-							stats = d4;
-							link_stats = d3;
-						} else {
-							throw new RuntimeException("Student is of unknown year: " + s);
-						}
-						
-						int need = stats.average - assignmentsByStudent.get(s).size();
-						int surplus = assignmentsByStudent.get(s.getPrimaryLink()).size() - link_stats.average;
-
-						return Triple.of(s, need, surplus);
-					})
-					.collect(Collectors.toList());
-
-//				info("\nStudents to balance: ");
-//				swapNeeded.forEach(t -> {
-//					info("\t" + t.getLeft().id + " needs " + t.getMiddle() + ", " + t.getLeft().getPrimaryLink() + " can give " + t.getRight());
-//				});
-
-				swapProviders(assignmentsByStudent, swapNeeded);
-			}
-		}
-	}
-	
-	private void swapProviders(Map<Student, List<ChairAssignment>> assignmentsByStudent, List<Triple<Student, Integer, Integer>> swapNeeded) {
-
-		for(Triple<Student, Integer, Integer> t : swapNeeded) {
-			Student s = t.getLeft();
-			int need = t.getMiddle();
-			int surplus = t.getRight();
-			Student link = s.getPrimaryLink();
-			
-			if(surplus <= 0) {
-				System.err.println("Unable to swap for " + s.id + " because there is no pool available: " + surplus);
-				continue;
-			}
-			
-			// Keep any chair assignments with both s and link
-			Map<DatedSession, ChairAssignment> s_assign = assignmentsByStudent.get(s).stream()
-				.filter(c -> 
-					((c.pairing.a == s && c.pairing.b == link) || (c.pairing.a == link && c.pairing.b == s)) &&
-					c.pairing.label == null
-				).collect(Collectors.toMap(c -> c.session, Function.identity()));
-			Map<DatedSession, ChairAssignment> l_assign = assignmentsByStudent.get(link).stream()
-				.filter(c -> 
-					((c.pairing.a == s && c.pairing.b == link) || (c.pairing.a == link && c.pairing.b == s)) &&
-					c.pairing.label == null
-				).collect(Collectors.toMap(c -> c.session, Function.identity()));
-
-			List<DatedSession> s_dates = new ArrayList<DatedSession>(s_assign.keySet());
-			List<DatedSession> l_dates = new ArrayList<DatedSession>(l_assign.keySet());
-			
-			XOGridUtils.shuffle(l_dates);
-			
-			int totalTransfer = Math.min(need, surplus);
-//			info(s.id + " needs " + need + ", can receive " + totalTransfer + "/"+l_dates.size()+" from link " + link.id + ", leaving link with " + (assignmentsByStudent.get(link).size() - totalTransfer) + " chairs ");
-
-			int count = 0;
-			for(DatedSession date : l_dates.subList(0, totalTransfer)) {
-				ChairAssignment assignment = l_assign.get(date);
-				if(assignment.hasToggled()) {
-					throw new RuntimeException("Assignment has been toggled once on " + date + " for " + s.id);
-				} else {
-					Student prev = assignment.getAssigned();
-					if(!assignmentsByStudent.get(prev).remove(assignment)) {
-						throw new RuntimeException("Assignment was not associated with the prev student");
-					}
-					assignment.toggleAssigned();
-					assignmentsByStudent.get(assignment.getAssigned()).add(assignment);
-					count++;
-				}
-			}
-//			info("Toggled " + count);
-		}
-	}
-	
 	private Map<GroupPractice, Map<DatedSession, List<Pairing>>> orphanPairings = Map.ofEntries(
 		Map.entry(GroupPractice.A, new TreeMap<DatedSession, List<Pairing>>()),
 		Map.entry(GroupPractice.B, new TreeMap<DatedSession, List<Pairing>>()),
@@ -889,7 +993,7 @@ public class BaselineSchedule2023 {
 	 * @param period
 	 * @return a new list of finalized list of pairs to assign chairs to;
 	 */
-	private List<Pairing> finalizePairings(List<Pairing> pairs, XOGridReader reader, LocalDate date, Period period, int chairCapacity, Function<CapacityScenario, ScenarioMode> capacity) {
+	private List<Pairing> finalizePairings(List<Pairing> pairs, XOGridReader reader, LocalDate date, Period period, int chairCapacity, RandomGenerator random, Function<CapacityScenario, ScenarioMode> capacity) {
 
 		// Remove orphans if this is not the session to provide
 		List<Pairing> awaiting = pairs.stream().filter(p -> isPairingOrphanAndNotPrioritized(p, period, reader.getPriority(date))).collect(Collectors.toList());
@@ -900,7 +1004,7 @@ public class BaselineSchedule2023 {
 		}
 
 		// Evaluate if we can expand
-		CapacityScenario scenario = CapacityScenario.of(chairCapacity, pairs, capacity);
+		CapacityScenario scenario = CapacityScenario.of(chairCapacity, pairs, random, capacity);
 		List<Pairing> expandedPairs = scenario.getPairs();
 		//printBeforeAfterPairings(pairs, expandedPairs);
 		
@@ -942,7 +1046,7 @@ public class BaselineSchedule2023 {
 		return p.type == PairingType.ORPHAN && ChairScheduler.selectProvider(p, period, priority) == Student.PLACEHOLDER;
 	}
 
-	private Predicate<Student> getOnlyAvailableStudentsSelector(XOGridReader reader, LocalDate _date, Period period) {
+	private Predicate<Student> getOnlyAvailableStudentsSelector(XOGridReader reader, ScheduleModel model, LocalDate _date, Period period) {
 		GenericSession session = GenericSession.toSession(_date, period);
 		return s -> {
 			if((!s.isID3() && s.iso == session) || (s.isID3() && SODDateUtils.dateIsOnOrAfter(_date, reader.getID3ISOStart()) && s.iso == session)) {
@@ -951,7 +1055,7 @@ public class BaselineSchedule2023 {
 				return false;
 			} else if(reader.inLecture(s, _date, period)) {
 				return false;
-			} else if((s.isD3() && reader.inD3Perio(s, _date, period)) || (s.isID3() && reader.inID3Perio(s, _date, period))) {				
+			} else if((s.isD3() && reader.inD3Perio(model, s, _date, period)) || (s.isID3() && reader.inID3Perio(model, s, _date, period))) {				
 				return false;
 			} else if((s.isD4() || s.isID4()) && SODDateUtils.dateIsOnOrAfter(_date, reader.getD4EarliestExit())) {
 				return false;
@@ -991,19 +1095,19 @@ public class BaselineSchedule2023 {
 		};
 	}
 	
-	private Pair<Student, String> getProviderAndLabel(Pairing p, GroupPractice practice, DatedSession date, UpperLower priority) {
+	private Pair<Student, String> getProviderAndLabel(Pairing p, GroupPractice practice, DatedSession date, UpperLower priority, Map<DatedSession, Student> er, Map<DatedSession, Student> npe) {
 
 		Student provider;
 		String chairLabel;
 
 		if(ERNPEScheduler.ER_LABEL.equals(p.label)) {
-			provider = erRotation.getOrDefault(date, Map.of()).get(practice);
+			provider = er.get(date);
 			chairLabel = ERNPEScheduler.ER_LABEL;
 			if(provider == null) {
 				throw new RuntimeException("ER provider expected for GP- "+practice+" on " + date);
 			}
 		} else if(ERNPEScheduler.NPE_LABEL.equals(p.label)) {
-			provider = npvRotation.getOrDefault(date, Map.of()).get(practice);
+			provider = npe.get(date);
 			chairLabel = ERNPEScheduler.NPE_LABEL;
 			if(provider == null) {
 				throw new RuntimeException("NPE provider expected for GP- "+practice+" on " + date);
@@ -0,0 +1,243 @@
+package ucsf.sod.xo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+import ucsf.sod.xo.ChairScheduler.ChairAssignment;
+import ucsf.sod.xo.objects.GroupPractice;
+import ucsf.sod.xo.objects.Student;
+
+/**
+ * Balances the number of chairs of the students of a practice by toggling chairs shared with a primary link, by
+ * simulated annealing. The objective is the sum of squared deviations of each student from the average of their
+ * class, D3 or D4, kept as a running sum and sum of squares per class so that a move is scored in constant time.
+ * Moves are made on a copy of the assignments; only the best state found is applied, so each chair is toggled at most once.
+ */
+class ChairBalancer {
+
+	private static final int MOVES_PER_CHAIR = 200;
+	private static final double INITIAL_TEMPERATURE = 2;
+	private static final double FINAL_TEMPERATURE = 0.01;
+	private static final int CLOCK_INTERVAL = 1024; // moves between checks of the time budget
+	private static final double TOGGLE_COST = 0.5; // of each chair held by another student than at the start, so that no chair is toggled for nothing
+
+	private final Map<Student, List<ChairAssignment>> assignmentsByStudent;
+	private final GroupPractice practice;
+	private final RandomGenerator random;
+	private Duration budget = null;
+	private long moves = -1;
+
+	private final Map<Student, Integer> ids = new HashMap<Student, Integer>();
+	private final List<Student> students = new ArrayList<Student>();
+	private final List<ChairAssignment> chairs = new ArrayList<ChairAssignment>();
+	private int[] count;
+	private int[] cohort;
+	private int[] holder; // student holding each chair at the start
+	private int[] from; // student holding each chair in the current state
+	private int[] to;
+	private final long[] sum = new long[2];
+	private final long[] sumOfSquares = new long[2];
+	private final int[] size = new int[2];
+
+	private ChairBalancer(Map<Student, List<ChairAssignment>> assignmentsByStudent, GroupPractice practice, Predicate<ChairAssignment> swappable, RandomGenerator random) {
+		this.assignmentsByStudent = assignmentsByStudent;
+		this.practice = practice;
+		this.random = random;
+
+		List<int[]> moves = new ArrayList<int[]>();
+		assignmentsByStudent.forEach((s, assignments) -> {
+			if(s.practice != practice || cohortOf(s) == -1) {
+				return;
+			}
+
+			idOf(s);
+			for(ChairAssignment c : assignments) {
+				Student other = c.pairing.a == s ? c.pairing.b : c.pairing.a;
+				if(c.pairing.label == null && !c.hasToggled() && other.practice == practice && cohortOf(other) != -1 && (s.getPrimaryLink() == other || other.getPrimaryLink() == s) && swappable.test(c)) {
+					chairs.add(c);
+					moves.add(new int[] { idOf(s), idOf(other) });
+				}
+			}
+		});
+
+		this.count = new int[students.size()];
+		this.cohort = new int[students.size()];
+		for(int i = 0; i < students.size(); i++) {
+			Student s = students.get(i);
+			count[i] = assignmentsByStudent.getOrDefault(s, List.of()).size();
+			cohort[i] = cohortOf(s);
+			sum[cohort[i]] += count[i];
+			sumOfSquares[cohort[i]] += (long)count[i] * count[i];
+			size[cohort[i]]++;
+		}
+
+		this.holder = new int[chairs.size()];
+		this.from = new int[chairs.size()];
+		this.to = new int[chairs.size()];
+		for(int i = 0; i < chairs.size(); i++) {
+			holder[i] = from[i] = moves.get(i)[0];
+			to[i] = moves.get(i)[1];
+		}
+	}
+
+	/**
+	 * @param swappable whether a chair may be toggled at all
+	 * @param random stream the moves are drawn from
+	 */
+	static ChairBalancer of(Map<Student, List<ChairAssignment>> assignmentsByStudent, GroupPractice practice, Predicate<ChairAssignment> swappable, RandomGenerator random) {
+		return new ChairBalancer(assignmentsByStudent, practice, swappable, random);
+	}
+
+	/**
+	 * Also stops the search after the given wall-clock time with the best state found by then, which then depends on
+	 * the speed of the machine; by default only the number of moves bounds the search, so the result follows from the stream
+	 */
+	ChairBalancer withBudget(Duration budget) {
+		this.budget = budget;
+		return this;
+	}
+
+	/**
+	 * @param moves number of moves to try; by default a fixed number per toggleable chair
+	 */
+	ChairBalancer withMoves(long moves) {
+		this.moves = moves;
+		return this;
+	}
+
+	/**
+	 * Searches for the best state and toggles its chairs, moving them between the lists of the given map
+	 * @return the number of chairs toggled
+	 */
+	int balance() {
+		int n = chairs.size();
+		if(n == 0) {
+			return 0;
+		}
+
+		long total = moves < 0 ? (long)MOVES_PER_CHAIR * n : moves;
+		long deadline = budget == null ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos();
+		double cooling = Math.pow(FINAL_TEMPERATURE / INITIAL_TEMPERATURE, 1.0 / total);
+		double temperature = INITIAL_TEMPERATURE;
+
+		double initial = objective();
+		double current = initial;
+		double best = initial;
+		int[] sinceBest = new int[64]; // moves to undo to get back to the best state
+		int undo = 0;
+
+		long m = 0;
+		for(; m < total; m++, temperature *= cooling) {
+			if(budget != null && m % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+				System.err.println("GP-" + practice + " balancing budget spent after " + m + " of " + total + " moves");
+				break;
+			}
+
+			int i = random.nextInt(n);
+			double delta = delta(from[i], to[i]) + (from[i] == holder[i] ? TOGGLE_COST : -TOGGLE_COST);
+			if(delta > 0 && random.nextDouble() >= Math.exp(-delta / temperature)) {
+				continue;
+			}
+
+			move(i);
+			current += delta;
+			if(current < best - 1e-9) {
+				best = current;
+				undo = 0;
+			} else {
+				if(undo == sinceBest.length) {
+					sinceBest = Arrays.copyOf(sinceBest, undo << 1);
+				}
+				sinceBest[undo++] = i;
+			}
+		}
+
+		while(undo > 0) {
+			move(sinceBest[--undo]);
+		}
+
+		int toggled = 0;
+		for(int i = 0; i < n; i++) {
+			ChairAssignment c = chairs.get(i);
+			Student next = students.get(from[i]);
+			if(c.getAssigned() == next) {
+				continue;
+			}
+
+			Student prev = c.getAssigned();
+			List<ChairAssignment> prevAssignments = assignmentsByStudent.get(prev);
+			if(!prevAssignments.remove(c)) {
+				throw new RuntimeException("Assignment was not associated with the prev student");
+			}
+			if(prevAssignments.isEmpty()) {
+				assignmentsByStudent.remove(prev);
+			}
+			c.toggleAssigned();
+			assignmentsByStudent.computeIfAbsent(next, s -> new ArrayList<ChairAssignment>()).add(c);
+			toggled++;
+		}
+
+		System.out.println("GP-" + practice + " balanced in " + m + " moves, toggled " + toggled + " of " + n + " chairs, squared deviation " + Math.round(initial) + " -> " + Math.round(best - toggled * TOGGLE_COST));
+		return toggled;
+	}
+
+	/**
+	 * Gives a chair of student x to student y
+	 * @return the change of the objective
+	 */
+	private double delta(int x, int y) {
+		int cx = cohort[x], cy = cohort[y];
+		if(cx == cy) {
+			return 2.0 * (count[y] - count[x]) + 2;
+		}
+
+		return (1 - 2.0 * count[x] + (2.0 * sum[cx] - 1) / size[cx]) + (1 + 2.0 * count[y] - (2.0 * sum[cy] + 1) / size[cy]);
+	}
+
+	private void move(int i) {
+		int x = from[i], y = to[i];
+		sumOfSquares[cohort[x]] += 1 - 2L * count[x];
+		sumOfSquares[cohort[y]] += 1 + 2L * count[y];
+		sum[cohort[x]]--;
+		sum[cohort[y]]++;
+		count[x]--;
+		count[y]++;
+		from[i] = y;
+		to[i] = x;
+	}
+
+	private double objective() {
+		double total = 0;
+		for(int c = 0; c < size.length; c++) {
+			if(size[c] > 0) {
+				total += sumOfSquares[c] - (double)sum[c] * sum[c] / size[c];
+			}
+		}
+		return total;
+	}
+
+	private int idOf(Student s) {
+		Integer id = ids.get(s);
+		if(id == null) {
+			ids.put(s, id = students.size());
+			students.add(s);
+		}
+		return id;
+	}
+
+	private static int cohortOf(Student s) {
+		if(s.isD3() || s.isID3()) {
+			return 0;
+		} else if(s.isD4() || s.isID4()) {
+			return 1;
+		} else {
+			return -1;
+		}
+	}
+}
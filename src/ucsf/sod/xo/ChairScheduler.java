@@ -1133,16 +1133,22 @@ public enum ChairScheduler {
 	public static final BiPredicate<DatedSession, Student> getERMoratorium(XOGridReader reader) {
 		AcademicCalendar calendar = reader.getAcademicCalendar();
 		switch(calendar) {
-		case AY2022_2023:
-			return (session, student) -> student.isD3() && SODDateUtils.dateIsOnOrBefore(session.date, LocalDate.of(calendar.startYear, Month.SEPTEMBER, 16)) && !(reader.isD4LectureDate(session.date) && session.isAM());
-		case AY2023_2024:
+		case AY2022_2023: {
+			int d3End = SODDateUtils.toEpochDay(LocalDate.of(calendar.startYear, Month.SEPTEMBER, 16));
+			return (session, student) -> student.isD3() && SODDateUtils.dateIsOnOrBefore(SODDateUtils.toEpochDay(session.date), d3End) && !(reader.isD4LectureDate(session.date) && session.isAM());
+		}
+		case AY2023_2024: {
+			int d3End = SODDateUtils.toEpochDay(LocalDate.of(calendar.startYear, Month.SEPTEMBER, 19));
+			int id3End = SODDateUtils.toEpochDay(LocalDate.of(calendar.endYear, Month.JANUARY, 1));
+			int id3LectureEnd = SODDateUtils.toEpochDay(LocalDate.of(calendar.endYear, Month.APRIL, 8));
 			return (session, student) -> {
-				if(student.isD3() && SODDateUtils.dateIsOnOrBefore(session.date, LocalDate.of(calendar.startYear, Month.SEPTEMBER, 19)) && !(reader.isD4LectureDate(session.date) && session.isAM())) {
+				int day = SODDateUtils.toEpochDay(session.date);
+				if(student.isD3() && SODDateUtils.dateIsOnOrBefore(day, d3End) && !(reader.isD4LectureDate(session.date) && session.isAM())) {
 					return true;
 				} else if(student.isID3()) {
-					if(SODDateUtils.dateIsOnOrBefore(session.date, LocalDate.of(calendar.endYear, Month.JANUARY, 1))) {
+					if(SODDateUtils.dateIsOnOrBefore(day, id3End)) {
 						return true;
-					} else if(SODDateUtils.dateIsOnOrBefore(session.date, LocalDate.of(calendar.endYear, Month.APRIL, 8)) && !(reader.isD4LectureDate(session.date) && session.isAM())) { 
+					} else if(SODDateUtils.dateIsOnOrBefore(day, id3LectureEnd) && !(reader.isD4LectureDate(session.date) && session.isAM())) { 
 						return true;
 					} else {
 						return false;
@@ -1151,6 +1157,7 @@ public enum ChairScheduler {
 					return false;
 				}
 			};
+		}
 		default:
 			return (s1, s2) -> false;
 		}
@@ -1160,11 +1167,15 @@ public enum ChairScheduler {
 	public static final BiPredicate<DatedSession, Student> getNPEMoratorium(AcademicCalendar calendar) {
 		
 		switch(calendar) {
-		case AY2022_2023:
-			return (session, student) -> student.isD4() && SODDateUtils.dateIsOnOrAfter(session.date, LocalDate.of(calendar.endYear, Month.MAY, 1)) && !(session.date.getDayOfWeek() == DayOfWeek.FRIDAY && session.isPM());
-		case AY2023_2024:
+		case AY2022_2023: {
+			int d4Start = SODDateUtils.toEpochDay(LocalDate.of(calendar.endYear, Month.MAY, 1));
+			return (session, student) -> student.isD4() && SODDateUtils.dateIsOnOrAfter(SODDateUtils.toEpochDay(session.date), d4Start) && !(session.date.getDayOfWeek() == DayOfWeek.FRIDAY && session.isPM());
+		}
+		case AY2023_2024: {
 			// TODO: what about Fri PM NPE -- D2s cover?
-			return (session, student) -> student.isFourthYear() && SODDateUtils.dateIsOnOrAfter(session.date, LocalDate.of(calendar.endYear, Month.APRIL, 8)) && !(session.date.getDayOfWeek() == DayOfWeek.FRIDAY && session.isPM());
+			int d4Start = SODDateUtils.toEpochDay(LocalDate.of(calendar.endYear, Month.APRIL, 8));
+			return (session, student) -> student.isFourthYear() && SODDateUtils.dateIsOnOrAfter(SODDateUtils.toEpochDay(session.date), d4Start) && !(session.date.getDayOfWeek() == DayOfWeek.FRIDAY && session.isPM());
+		}
 		default:
 			return (s1, s2) -> false;
 		}
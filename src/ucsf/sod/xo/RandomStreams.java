@@ -0,0 +1,56 @@
+package ucsf.sod.xo;
+
+import java.util.SplittableRandom;
+
+import ucsf.sod.objects.DatedSession;
+import ucsf.sod.util.SODDateUtils;
+import ucsf.sod.xo.objects.GroupPractice;
+
+/**
+ * Seeded random streams, each derived from the seed and the unit of work drawing from it. A unit draws the
+ * same numbers whatever order, or thread, the units run in.
+ */
+public class RandomStreams {
+
+	public static enum Phase {
+		CAPACITY,	// splitting the pairs of a session to capacity
+		ER,
+		NPE,
+		BALANCE;	// swapping chairs between linked students
+	}
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	public final long seed;
+
+	private RandomStreams(long seed) {
+		this.seed = seed;
+	}
+
+	public static RandomStreams of(long seed) {
+		return new RandomStreams(seed);
+	}
+
+	public SplittableRandom get(Phase phase, GroupPractice practice) {
+		return derive(phase.ordinal(), practice.ordinal());
+	}
+
+	public SplittableRandom get(Phase phase, GroupPractice practice, DatedSession session) {
+		return derive(phase.ordinal(), practice.ordinal(), SODDateUtils.toEpochDay(session.date) * 2L + (session.isPM() ? 1 : 0));
+	}
+
+	private SplittableRandom derive(long... keys) {
+		long h = seed;
+		for(long key : keys) {
+			h = mix(h + GOLDEN_GAMMA * (key + 1));
+		}
+		return new SplittableRandom(h);
+	}
+
+	// Finalizer of SplitMix64
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
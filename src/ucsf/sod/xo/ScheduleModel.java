@@ -0,0 +1,213 @@
+package ucsf.sod.xo;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ucsf.sod.util.SODDateUtils;
+import ucsf.sod.xo.objects.GroupPractice;
+import ucsf.sod.xo.objects.Rotation;
+import ucsf.sod.xo.objects.Rotation.RotationLength;
+import ucsf.sod.xo.objects.Student;
+
+/**
+ * Immutable snapshot of the students, their practices, and the rotation schedule of an X-O grid.
+ * Edits derive a new version that shares every rotation and date left untouched, leaving this one
+ * and the static Rotation and GroupPractice state as they were; any number of versions can be
+ * evaluated side by side.
+ */
+public class ScheduleModel {
+
+	public final long version;
+	private final Map<String, Student> students;
+	private final Map<GroupPractice, Set<Student>> practices;
+	private final Map<Rotation, Map<LocalDate, Set<Student>>> rotations;
+	private final Map<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>> byPractice; // rotations partitioned by practice
+
+	private ScheduleModel(long version, Map<String, Student> students, Map<GroupPractice, Set<Student>> practices, Map<Rotation, Map<LocalDate, Set<Student>>> rotations, Map<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>> byPractice) {
+		this.version = version;
+		this.students = students;
+		this.practices = practices;
+		this.rotations = rotations;
+		this.byPractice = byPractice;
+	}
+
+	/**
+	 * @param students the students of the grid
+	 * @param rotations the rotation of each student on each date; UNKNOWN entries are left out
+	 */
+	static ScheduleModel of(long version, Set<Student> students, Map<Student, Map<LocalDate, Rotation>> rotations) {
+		Map<String, Student> byId = new TreeMap<String, Student>();
+		Map<GroupPractice, Set<Student>> practices = new EnumMap<GroupPractice, Set<Student>>(GroupPractice.class);
+		for(Student s : students) {
+			byId.put(s.id, s);
+			if(s.practice != null) {
+				practices.computeIfAbsent(s.practice, p -> new HashSet<Student>()).add(s);
+			}
+		}
+		practices.replaceAll((p, s) -> Collections.unmodifiableSet(s));
+
+		Map<Rotation, Map<LocalDate, Set<Student>>> schedule = new EnumMap<Rotation, Map<LocalDate, Set<Student>>>(Rotation.class);
+		for(Map.Entry<Student, Map<LocalDate, Rotation>> e : rotations.entrySet()) {
+			for(Map.Entry<LocalDate, Rotation> r : e.getValue().entrySet()) {
+				if(r.getValue() != Rotation.UNKNOWN) {
+					schedule.computeIfAbsent(r.getValue(), _r -> new HashMap<LocalDate, Set<Student>>())
+						.computeIfAbsent(toKey(r.getValue(), r.getKey()), d -> new HashSet<Student>())
+						.add(e.getKey());
+				}
+			}
+		}
+		schedule.values().forEach(m -> m.replaceAll((d, s) -> Collections.unmodifiableSet(s)));
+
+		Map<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>> byPractice = new EnumMap<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>>(Rotation.class);
+		schedule.forEach((r, dates) -> {
+			Map<LocalDate, Map<GroupPractice, Set<Student>>> partitions = new HashMap<LocalDate, Map<GroupPractice, Set<Student>>>();
+			dates.forEach((date, s) -> partitions.put(date, partition(s)));
+			byPractice.put(r, partitions);
+		});
+
+		return new ScheduleModel(version, Collections.unmodifiableMap(byId), Collections.unmodifiableMap(practices), schedule, byPractice);
+	}
+
+	private static Map<GroupPractice, Set<Student>> partition(Set<Student> students) {
+		Map<GroupPractice, Set<Student>> m = new EnumMap<GroupPractice, Set<Student>>(GroupPractice.class);
+		for(Student s : students) {
+			if(s.practice != null) {
+				m.computeIfAbsent(s.practice, p -> new HashSet<Student>()).add(s);
+			}
+		}
+		m.replaceAll((p, s) -> Collections.unmodifiableSet(s));
+		return m;
+	}
+
+	private static LocalDate toKey(Rotation r, LocalDate date) {
+		if(r.length == RotationLength.WEEK_LONG && date.getDayOfWeek() != DayOfWeek.MONDAY) {
+			return SODDateUtils.floorToLastMonday(date);
+		}
+		return date;
+	}
+
+	/**
+	 * Mirrors Student.getStudent(String), looking the student up among the students of this model only
+	 */
+	public Student getStudent(String id) {
+		if(id == null || id.length() == 0) {
+			return null;
+		}
+		
+		Student s = Student.getReservedStudent(id);
+		return s != null ? s : students.get(Student.toCanonicalId(id));
+	}
+
+	public TreeSet<Student> getStudentsSorted(Predicate<Student> p) {
+		return students.values().stream().filter(p).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	public Stream<Student> getStudentsStream(GroupPractice practice, Predicate<Student> p) {
+		return practices.getOrDefault(practice, Set.of()).stream().filter(p);
+	}
+
+	/**
+	 * Mirrors Rotation.getStudents(LocalDate)
+	 */
+	public Set<Student> getStudents(Rotation r, LocalDate date) {
+		return rotations.getOrDefault(r, Map.of()).getOrDefault(toKey(r, date), Set.of());
+	}
+
+	/**
+	 * Like Rotation.getStudentsByPractice(GroupPractice, LocalDate), except that only the dates of week-long
+	 * rotations are floored to their Monday, as in getStudents(Rotation, LocalDate)
+	 */
+	public Set<Student> getStudentsByPractice(Rotation r, GroupPractice p, LocalDate date) {
+		return byPractice.getOrDefault(r, Map.of()).getOrDefault(toKey(r, date), Map.of()).getOrDefault(p, Set.of());
+	}
+
+	/**
+	 * Mirrors Rotation.getStudentsByPractice(GroupPractice)
+	 */
+	public Map<LocalDate, Set<Student>> getStudentsByPractice(Rotation r, GroupPractice p) {
+		Map<LocalDate, Set<Student>> m = new HashMap<LocalDate, Set<Student>>();
+		for(Map.Entry<LocalDate, Map<GroupPractice, Set<Student>>> e : byPractice.getOrDefault(r, Map.of()).entrySet()) {
+			Set<Student> s = e.getValue().get(p);
+			if(s != null) {
+				m.put(e.getKey(), s);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Mirrors XOGridReader.getRotationByStudent(), for the week of the date
+	 * @return the first rotation, in the order of the enum, the student is on; UNKNOWN if none
+	 */
+	public Rotation getRotation(Student s, LocalDate date) {
+		if(s == Student.PLACEHOLDER || s.isD2()) {
+			return Rotation.UNKNOWN;
+		}
+		
+		LocalDate week = SODDateUtils.floorToLastMonday(date);
+		for(Map.Entry<Rotation, Map<LocalDate, Set<Student>>> e : rotations.entrySet()) {
+			if(e.getValue().getOrDefault(week, Set.of()).contains(s)) {
+				return e.getKey();
+			}
+		}
+		return Rotation.UNKNOWN;
+	}
+
+	/**
+	 * Mirrors Rotation.getRotationSchedule()
+	 */
+	public Map<LocalDate, Set<Student>> getRotationSchedule(Rotation r) {
+		return Collections.unmodifiableMap(rotations.getOrDefault(r, Map.of()));
+	}
+
+	/**
+	 * Exchanges the students on rotation r at src with the students at dst, in the next version of the model
+	 * @throws RuntimeException if a student to move is not on the rotation at their date
+	 */
+	public ScheduleModel withSwap(Rotation r, LocalDate src, List<Student> srcStudents, LocalDate dst, List<Student> dstStudents) {
+		if(r == Rotation.ZSFGH) {
+			throw new RuntimeException("Need to determine how to detect open slot");
+		}
+
+		Map<LocalDate, Set<Student>> schedule = new HashMap<LocalDate, Set<Student>>(rotations.getOrDefault(r, Map.of()));
+		move(schedule, toKey(r, src), srcStudents, dstStudents);
+		move(schedule, toKey(r, dst), dstStudents, srcStudents);
+
+		Map<LocalDate, Map<GroupPractice, Set<Student>>> partitions = new HashMap<LocalDate, Map<GroupPractice, Set<Student>>>(byPractice.getOrDefault(r, Map.of()));
+		partitions.put(toKey(r, src), partition(schedule.get(toKey(r, src))));
+		partitions.put(toKey(r, dst), partition(schedule.get(toKey(r, dst))));
+
+		Map<Rotation, Map<LocalDate, Set<Student>>> next = new EnumMap<Rotation, Map<LocalDate, Set<Student>>>(rotations);
+		next.put(r, schedule);
+		Map<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>> nextByPractice = new EnumMap<Rotation, Map<LocalDate, Map<GroupPractice, Set<Student>>>>(byPractice);
+		nextByPractice.put(r, partitions);
+		return new ScheduleModel(version + 1, students, practices, next, nextByPractice);
+	}
+
+	private static void move(Map<LocalDate, Set<Student>> schedule, LocalDate date, List<Student> out, List<Student> in) {
+		List<Student> _out = out.stream().filter(s -> s != Student.PLACEHOLDER).collect(Collectors.toList());
+		Set<Student> current = schedule.get(date);
+		if(current == null || current.size() == 0) {
+			throw new RuntimeException("No students to remove");
+		}
+
+		Set<Student> l = new HashSet<Student>(current);
+		if(!l.removeAll(_out)) {
+			throw new RuntimeException("Student needs to be removed but was not");
+		}
+		l.addAll(in);
+		schedule.put(date, Collections.unmodifiableSet(l));
+	}
+}
@@ -0,0 +1,87 @@
+package ucsf.sod.xo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ucsf.sod.xo.objects.GroupPractice;
+import ucsf.sod.xo.objects.Rotation;
+import ucsf.sod.xo.objects.Student;
+
+/**
+ * Differences between two revisions of an X-O grid, as applied by XOGridReader.reingest()
+ */
+public class XOGridChanges {
+
+	public static class RotationChange {
+		public final Student student;
+		public final LocalDate week;
+		public final Rotation before;
+		public final Rotation after;
+
+		RotationChange(Student student, LocalDate week, Rotation before, Rotation after) {
+			this.student = student;
+			this.week = week;
+			this.before = before;
+			this.after = after;
+		}
+
+		@Override
+		public String toString() {
+			return student.id + "\t" + week + "\t" + before + " -> " + after;
+		}
+	}
+
+	private final List<RotationChange> rotations = new ArrayList<RotationChange>();
+	private final Set<LocalDate> calendarWeeks = new TreeSet<LocalDate>(); // weeks whose lectures, huddles, break or priority changed
+
+	void addRotationChange(Student student, LocalDate week, Rotation before, Rotation after) {
+		rotations.add(new RotationChange(student, week, before, after));
+	}
+
+	void addCalendarWeek(LocalDate week) {
+		calendarWeeks.add(week);
+	}
+
+	public boolean isEmpty() {
+		return rotations.isEmpty() && calendarWeeks.isEmpty();
+	}
+
+	public List<RotationChange> getRotationChanges() {
+		return Collections.unmodifiableList(rotations);
+	}
+
+	public Set<LocalDate> getCalendarWeeks() {
+		return Collections.unmodifiableSet(calendarWeeks);
+	}
+
+	/**
+	 * A rotation change affects the practice of the student; a calendar change affects every practice
+	 * @return the Mondays of the affected weeks of each practice
+	 */
+	public Map<GroupPractice, Set<LocalDate>> getAffectedWeeks() {
+		Map<GroupPractice, Set<LocalDate>> affected = new TreeMap<GroupPractice, Set<LocalDate>>();
+		for(GroupPractice practice : XOGridUtils.ALL_PRACTICES) {
+			affected.put(practice, new TreeSet<LocalDate>(calendarWeeks));
+		}
+
+		for(RotationChange c : rotations) {
+			if(c.student.practice != null) {
+				affected.get(c.student.practice).add(c.week);
+			}
+		}
+
+		affected.values().removeIf(Set::isEmpty);
+		return affected;
+	}
+
+	@Override
+	public String toString() {
+		return rotations.size() + " rotation changes, " + calendarWeeks.size() + " calendar weeks changed";
+	}
+}
@@ -48,14 +48,14 @@ public class XOGridOptimizer {
 			AcademicCalendar.CURRENT_YEAR = AcademicCalendar.AY2023_2024;
 		}
 		
-		XOGridReader reader = XOGridReader2023.of(SODUtil.openWorkbook(xoGridFileName));
+		XOGridReader reader = XOGridReader2023.of(xoGridFileName);
 		System.out.println("X-O Grid Loaded");
 		
 		Function<Student, XOGridReader> getXOGrid = s -> {			
 			return reader;
 		};
 		
-		XOGridOptimizer opt = new XOGridOptimizer(getXOGrid, LocalDate.of(2023, Month.JUNE, 12), LocalDate.of(2024, Month.JUNE, 14));
+		XOGridOptimizer opt = new XOGridOptimizer(reader.getModel(), getXOGrid, LocalDate.of(2023, Month.JUNE, 12), LocalDate.of(2024, Month.JUNE, 14));
 		
 		File outputFile = SODUtil.getTimestampedFile(xoGridEvalDirectory, "rotationOrder", "xlsx");
 		opt.evalXOGrid(outputFile);
@@ -112,13 +112,15 @@ public class XOGridOptimizer {
 	private final LocalDate END;
 	
 	private final Function<Student, XOGridReader> getXOGrid;
+	private ScheduleModel model; // rotations as of the swaps executed so far
 	private BufferedReader cmd = new BufferedReader(new InputStreamReader(System.in));
 	private String line;
 	private List<Swap> swaps = new ArrayList<Swap>();
 	private Map<Student, Map<LocalDate, Rotation>> swapOverlay = new HashMap<Student, Map<LocalDate, Rotation>>();
 	private Map<LocalDate, Map<GroupPractice, List<Student>>> studentsUnavailable;
 
-	public XOGridOptimizer(Function<Student, XOGridReader> f, LocalDate start, LocalDate end) {
+	public XOGridOptimizer(ScheduleModel model, Function<Student, XOGridReader> f, LocalDate start, LocalDate end) {
+		this.model = model;
 		getXOGrid = f;
 		this.START = start;
 		this.END = end;
@@ -158,7 +160,7 @@ public class XOGridOptimizer {
 		for(; date.isBefore(endDate); date = date.plusDays(7)) {
 			List<Student> onRotation = new ArrayList<Student>();
 			for(Rotation r : List.of(Rotation.ZSFGH, Rotation.D1201, Rotation.ORTHO, Rotation.OM, Rotation.PROS, Rotation.EXT, Rotation.ENDO, Rotation.PGA, Rotation.HD, Rotation.XRAY, Rotation.PEDS, Rotation.B)) {
-				onRotation.addAll(r.getStudents(date));
+				onRotation.addAll(model.getStudents(r, date));
 			}
 			studentsUnavailable.put(date, onRotation.stream().collect(Collectors.groupingBy(s -> s.practice)));
 		}
@@ -236,7 +238,7 @@ public class XOGridOptimizer {
 				if(date == null)
 					break;
 
-				var asdf = Rotation.CLINIC.getStudents(date).stream().filter(_s -> _s.practice == practice).collect(Collectors.toList());
+				var asdf = model.getStudents(Rotation.CLINIC, date).stream().filter(_s -> _s.practice == practice).collect(Collectors.toList());
 				System.out.println(asdf);
 				break;
 			}
@@ -253,7 +255,7 @@ public class XOGridOptimizer {
 					break;
 				}
 				
-				var cluster = Rotation.CLINIC.getStudentsByPractice(practice, date).stream().collect(Collectors.groupingBy(s -> s.cluster));
+				var cluster = model.getStudentsByPractice(Rotation.CLINIC, practice, date).stream().collect(Collectors.groupingBy(s -> s.cluster));
 				System.out.println(cluster);
 				//printStudentSupply(date, cluster);
 				break;
@@ -267,7 +269,7 @@ public class XOGridOptimizer {
 				LocalDate date = START;
 				LocalDate endDate = END;
 				for(; date.isBefore(endDate); date = date.plusDays(7)) {
-					var cluster = Rotation.CLINIC.getStudentsByPractice(practice, date).stream().collect(Collectors.groupingBy(s -> s.cluster));
+					var cluster = model.getStudentsByPractice(Rotation.CLINIC, practice, date).stream().collect(Collectors.groupingBy(s -> s.cluster));
 					//printStudentSupply(date, cluster);
 				}
 				break;
@@ -294,7 +296,7 @@ public class XOGridOptimizer {
 				
 				Map<PerioSession, Set<Student>> perio = new HashMap<PerioSession, Set<Student>>();
 				for(GroupPractice p : XOGridUtils.PRACTICES) {
-					p.getStudentsStream(Student::isD3).forEach(s -> {
+					model.getStudentsStream(p, Student::isD3).forEach(s -> {
 						PerioSession session = s.d3perio;
 						Set<Student> _s = perio.get(session);
 						if(_s == null) {
@@ -483,11 +485,7 @@ public class XOGridOptimizer {
 	
 	public void executeSwap(Swap s) {
 		printInfo("Swapping");
-		Rotation r = s.r;
-		r.removeStudents(s.src, s.srcStudent);
-		r.removeStudents(s.dst, s.dstStudent);
-		r.registerStudents(s.src, s.dstStudent);
-		r.registerStudents(s.dst, s.srcStudent);
+		model = model.withSwap(s.r, s.src, s.srcStudent, s.dst, s.dstStudent);
 		swaps.add(s);
 		
 		for(Student _s : s.srcStudent) {
@@ -563,7 +561,7 @@ public class XOGridOptimizer {
 		}
 		
 		Student s1 = null;
-		Set<Student> l = r1.getStudents(date1).stream().filter(s -> s.practice == impactedPractice).collect(Collectors.toSet());
+		Set<Student> l = model.getStudents(r1, date1).stream().filter(s -> s.practice == impactedPractice).collect(Collectors.toSet());
 		while(true) {
 			printInfo("The following students are on rotation: ");
 			for(Student s : l) {
@@ -575,7 +573,7 @@ public class XOGridOptimizer {
 				break;
 			}
 			
-			s1 = Student.getStudent(line.toUpperCase());
+			s1 = model.getStudent(line.toUpperCase());
 			if(s1 != null) {
 				if(l.contains(s1)) {
 					break;
@@ -621,7 +619,7 @@ public class XOGridOptimizer {
 			
 			{
 				GroupPractice selected = targetPractice;
-				l = r1.getStudents(date2).stream().filter(s -> s.practice == selected).collect(Collectors.toSet());
+				l = model.getStudents(r1, date2).stream().filter(s -> s.practice == selected).collect(Collectors.toSet());
 				printInfo("The following students are on rotation: ");
 				for(Student s : l) {
 					printInfo("\t" + s.id + " (" + s.practice + ")");
@@ -635,7 +633,7 @@ public class XOGridOptimizer {
 					break;
 				}
 				
-				s2 = Student.getStudent(line.toUpperCase());
+				s2 = model.getStudent(line.toUpperCase());
 				if(s2 != null) {
 					if(l.contains(s2)) {
 						break;
@@ -759,7 +757,7 @@ public class XOGridOptimizer {
 	
 	public void findOptions(Rotation r, LocalDate src, Student s, GroupPractice p2) {
 		printInfo("These are the options\n");
-		Map<LocalDate, Set<Student>> alternatives = r.getStudentsByPractice(p2);
+		Map<LocalDate, Set<Student>> alternatives = model.getStudentsByPractice(r, p2);
 		if(r == Rotation.PEDS) {
 			LocalDate cutoff = LocalDate.of(END.getYear(), Month.JANUARY, 1);
 			if(s.year == StudentYear.FOURTH_YEAR) {
@@ -811,7 +809,7 @@ public class XOGridOptimizer {
 	private void listD3PerioAssignment() {
 		Map<PerioSession, Set<Student>> perio = new HashMap<PerioSession, Set<Student>>();
 		for(GroupPractice p : XOGridUtils.ALL_PRACTICES) {
-			p.getStudentsStream(Student::isD3).forEach(s -> {
+			model.getStudentsStream(p, Student::isD3).forEach(s -> {
 				PerioSession session = s.d3perio;
 				Set<Student> _s = perio.get(session);
 				if(_s == null) {
@@ -905,7 +903,7 @@ public class XOGridOptimizer {
 				break;
 			}
 			
-			s1 = Student.getStudent(line.toUpperCase());
+			s1 = model.getStudent(line.toUpperCase());
 			if(s1 != null) {
 				break;
 			} else {
@@ -966,8 +964,8 @@ public class XOGridOptimizer {
 
 		// Validate ID4 assigned to all rotations
 		for(Rotation r : List.of(Rotation.ZSFGH, Rotation.D1201, Rotation.PEDS, Rotation.PROS, Rotation.OM)) {
-			Set<Student> unassigned = Student.getStudentsSorted(s -> s.isID4());
-			Map<LocalDate, Set<Student>> schedule = r.getRotationSchedule();
+			Set<Student> unassigned = model.getStudentsSorted(s -> s.isID4());
+			Map<LocalDate, Set<Student>> schedule = model.getRotationSchedule(r);
 			for(LocalDate date : new TreeSet<LocalDate>(schedule.keySet())) {
 				Set<Student> l = schedule.get(date);
 				unassigned.removeAll(l);
@@ -978,8 +976,8 @@ public class XOGridOptimizer {
 
 		// Validate ID3 assigned to all rotations
 		for(Rotation r : List.of(Rotation.PGA, Rotation.ZSFGH, Rotation.ORTHO, Rotation.PEDS)) {
-			Set<Student> unassigned = Student.getStudentsSorted(s -> s.isID3());
-			Map<LocalDate, Set<Student>> schedule = r.getRotationSchedule();
+			Set<Student> unassigned = model.getStudentsSorted(s -> s.isID3());
+			Map<LocalDate, Set<Student>> schedule = model.getRotationSchedule(r);
 			for(LocalDate date : new TreeSet<LocalDate>(schedule.keySet())) {
 				Set<Student> l = schedule.get(date);
 				unassigned.removeAll(l);
@@ -990,8 +988,8 @@ public class XOGridOptimizer {
 
 		// Validate D4 assigned to all rotations
 		for(Rotation r : List.of(Rotation.PROS, Rotation.D1201, Rotation.ZSFGH, Rotation.EXT)) {
-			Set<Student> unassigned = Student.getStudentsSorted(s -> s.isD4());
-			Map<LocalDate, Set<Student>> schedule = r.getRotationSchedule();
+			Set<Student> unassigned = model.getStudentsSorted(s -> s.isD4());
+			Map<LocalDate, Set<Student>> schedule = model.getRotationSchedule(r);
 			for(LocalDate date : new TreeSet<LocalDate>(schedule.keySet())) {
 				Set<Student> l = schedule.get(date);
 				unassigned.removeAll(l);
@@ -1002,8 +1000,8 @@ public class XOGridOptimizer {
 		
 		// Validate D3 assigned to all rotations
 		for(Rotation r : List.of(Rotation.XRAY, Rotation.HD, Rotation.ORTHO, Rotation.OM, Rotation.D1201, Rotation.PGA, Rotation.ENDO, Rotation.PEDS)) {
-			Set<Student> unassigned = Student.getStudentsSorted(s -> s.isD3());
-			Map<LocalDate, Set<Student>> schedule = r.getRotationSchedule();
+			Set<Student> unassigned = model.getStudentsSorted(s -> s.isD3());
+			Map<LocalDate, Set<Student>> schedule = model.getRotationSchedule(r);
 			for(LocalDate date : new TreeSet<LocalDate>(schedule.keySet())) {
 				Set<Student> l = schedule.get(date);
 				unassigned.removeAll(l);
@@ -1109,7 +1107,7 @@ public class XOGridOptimizer {
 				builder.add(date.toString());
 				List<Student> onRotation = new ArrayList<Student>();
 				for(Rotation r : List.of(Rotation.ZSFGH, Rotation.D1201, Rotation.ORTHO, Rotation.OM, Rotation.PROS, Rotation.EXT, Rotation.ENDO, Rotation.PGA, Rotation.HD, Rotation.XRAY, Rotation.PEDS)) {
-					Set<Student> all = r.getStudents(date);
+					Set<Student> all = model.getStudents(r, date);
 					builder.add(Integer.toString(all.size()));
 					Map<Pair<StudentProgram, StudentYear>, Pair<String, Integer>> history = lastWeek.get(r);
 					Map<Pair<StudentProgram, StudentYear>, List<Pair<Integer, Integer>>> merge = mergeRanges.get(r);
@@ -1156,7 +1154,7 @@ public class XOGridOptimizer {
 					)
 				);
 				for(GroupPractice p : List.of(GroupPractice.F, GroupPractice.E, GroupPractice.D, GroupPractice.C, GroupPractice.B, GroupPractice.A)) {
-					List<Student> asdf = Rotation.B.getStudents(date).stream().filter(s -> s.practice == p).collect(Collectors.toList());
+					List<Student> asdf = model.getStudents(Rotation.B, date).stream().filter(s -> s.practice == p).collect(Collectors.toList());
 					int breakCount = asdf.size();
 					Integer i = countMap.get(p);
 					String _s = "";
@@ -1199,7 +1197,7 @@ public class XOGridOptimizer {
 	}
 	
 	public static Map<Student, Integer> countsWithLink(XOGridReader reader) {
-		Set<Student> students = Student.getStudentsSorted(s -> s.isD3() || s.isD4());
+		Set<Student> students = reader.getModel().getStudentsSorted(s -> s.isD3() || s.isD4());
 		Iterator<Student> iter = students.iterator();
 		LocalDate start = reader.getFirstDate();
 		LocalDate end = reader.getLastDate();
@@ -1,53 +1,78 @@
 package ucsf.sod.xo;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
-import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellAddress;
 
 import ucsf.sod.objects.GenericPeriod;
 import ucsf.sod.objects.GenericSession;
 import ucsf.sod.objects.Period;
 import ucsf.sod.objects.StudentYear;
-import ucsf.sod.util.ExcelUtil;
+import ucsf.sod.util.GridSheet;
 import ucsf.sod.util.SODDateUtils;
+import ucsf.sod.util.WorkbookGridSheet;
 import ucsf.sod.xo.calendar.AcademicCalendar;
+import ucsf.sod.xo.calendar.AcademicDayIndex;
 import ucsf.sod.xo.objects.GroupPractice;
 import ucsf.sod.xo.objects.PerioSession;
 import ucsf.sod.xo.objects.Rotation;
+import ucsf.sod.xo.objects.RotationLabel;
 import ucsf.sod.xo.objects.Student;
 import ucsf.sod.xo.objects.Student.Cluster;
 import ucsf.sod.xo.objects.Student.PerioGroup;
 import ucsf.sod.xo.objects.Student.UpperLower;
+import ucsf.sod.xo.scheduler.StudentIndex;
 
 public abstract class XOGridReader {
 	
-	protected final Sheet source;
-	protected final Map<Student, Cell> schedule = new TreeMap<Student, Cell>();
-	protected final Map<LocalDate, Cell> dateToIndex = new TreeMap<LocalDate, Cell>();
+	protected GridSheet source; // null once detached
+	protected final Map<Student, CellAddress> schedule = new TreeMap<Student, CellAddress>();
+	protected final List<Student> roster = new ArrayList<Student>(); // every student created by the reader, in the order they were created
+	protected final TreeMap<LocalDate, Integer> dateToIndex = new TreeMap<LocalDate, Integer>();
 	protected final Set<LocalDate> d4Lecture = new TreeSet<LocalDate>();
 	protected final Set<LocalDate> d3Lecture = new TreeSet<LocalDate>();
 	protected final Set<LocalDate> huddles = new TreeSet<LocalDate>();
+	protected final Set<LocalDate> breaks = new TreeSet<LocalDate>();
+	protected final Map<LocalDate, UpperLower> priority = new TreeMap<LocalDate, UpperLower>();
+	private AcademicDayIndex days; // the sets above as bitsets, rebuilt whenever they are read
+	
+	// Rotation ordinals by [week][student], weeks counted from the Monday firstWeek (as an epoch day)
+	private static final Rotation[] ROTATIONS = Rotation.values();
+	private final Map<Student, Integer> studentIndex = new HashMap<Student, Integer>();
+	private byte[][] rotationMatrix;
+	private int firstWeek;
+	
+	private StudentIndex students; // every registered student, indexed once they are linked
+	private ScheduleModel model = null; // built on first use, and again after a reingest
+	private long modelVersion = 0;
+	
+	// Threads used to load a grid
+	private static final int LOADER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 	
 	protected static class ReaderConfig {
 		public int practiceRowIndex;
@@ -58,8 +83,9 @@ public abstract class XOGridReader {
 		public int isoRowIndex;
 		public int firstDateRowIndex;
 		public int lastDateRowIndex;
-		public Sheet d2Links = null;
-		public final NamesLookup nameLookup;
+		public GridSheet d2Links = null;
+		public GridSheet names = null;
+		public NamesLookup nameLookup = null; // read from names while the grid loads when not given
 		
 		@Deprecated
 		public ReaderConfig() throws IOException {
@@ -67,7 +93,11 @@ public abstract class XOGridReader {
 		}
 		
 		public ReaderConfig(Sheet names, Sheet links) {
-			nameLookup = NamesLookup.read(names);
+			this(WorkbookGridSheet.of(names), WorkbookGridSheet.of(links));
+		}
+		
+		public ReaderConfig(GridSheet names, GridSheet links) {
+			this.names = names;
 			d2Links = links;
 		}
 	}
@@ -119,7 +149,7 @@ public abstract class XOGridReader {
 			return new NamesLookup(names);
 		}
 		
-		public static NamesLookup read(Sheet s) {
+		public static NamesLookup read(GridSheet s) {
 			
 			final int column_studentId = 0;
 			final int column_last = 1;
@@ -127,20 +157,17 @@ public abstract class XOGridReader {
 			final int column_email = 3;
 			
 			Map<String, Name> names = new HashMap<String, Name>();
-			for(Row r : s) {
-				if(r.getRowNum() == 0)
+			for(int r = 1; r <= s.getLastRowNum(); r++) {
+				if(!s.hasRow(r))
 					continue;
 				
-				String studentId = r.getCell(column_studentId).getStringCellValue();
-				String last = r.getCell(column_last).getStringCellValue();
-				String first = r.getCell(column_first).getStringCellValue();
+				String studentId = s.getText(r, column_studentId);
+				String last = s.getText(r, column_last);
+				String first = s.getText(r, column_first);
 				
-				String email = "none@example.com";
-				{
-					Cell c = r.getCell(column_email);
-					if(c != null && c.getCellType() == CellType.STRING) {
-						email = c.getStringCellValue();
-					}
+				String email = s.getText(r, column_email);
+				if(email.length() == 0) {
+					email = "none@example.com";
 				}
 				
 				names.put(studentId, new Name(first, last, email));
@@ -150,114 +177,135 @@ public abstract class XOGridReader {
 	}
 	
 	protected XOGridReader(Workbook wb, ReaderConfig config) throws IOException {
-		source = wb.getSheetAt(0);
+		this(WorkbookGridSheet.of(wb.getSheetAt(0)), config);
+	}
+	
+	protected XOGridReader(GridSheet source, ReaderConfig config) throws IOException {
+		this.source = source;
 		this.config = config;
 
-		Map<String, Pair<PerioSession, PerioGroup>> perio = getPerioInfo();
+		ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+			Thread t = new Thread(r, "xo-grid-loader");
+			t.setDaemon(true);
+			return t;
+		});
 		
-		// Get the column indices that delineate the start of the next group practice
-		practiceLookup = generatePracticeLookup(config.practiceRowIndex);
+		try {
+			// Stages that only read the sheets run concurrently
+			CompletableFuture<NamesLookup> names = stage(loader, () -> config.nameLookup != null ? config.nameLookup : NamesLookup.read(config.names));
+			CompletableFuture<Map<String, Pair<PerioSession, PerioGroup>>> perio = stage(loader, this::getPerioInfo);
+			
+			// Get the column indices that delineate the start of the next group practice and cluster
+			CompletableFuture<int[]> practices = stage(loader, () -> generatePracticeLookup(config.practiceRowIndex));
+			CompletableFuture<int[]> clusters = stage(loader, () -> generateClusterLookup(config.clusterRowIndex));
+			
+			// Read the D3, D4, and Huddle Dates, then the break weeks and the U/L priority of each week
+			CompletableFuture<Void> weeks = stage(loader, () -> {
+				readLectureHuddles(config.firstDateRowIndex, config.lastDateRowIndex);
+				readWeekAttributes();
+				indexDays();
+				return null;
+			});
 	
-		// Get the column indices that delineate the start of the next cluster
-		clusterLookup = generateClusterLookup(config.clusterRowIndex);
-		System.out.println("Practice and Cluster Information Obtained");
-		
-		// Pair all the students together
-		pairStudents(
-			config.nameLookup,
-			perio,
-			source.getRow(config.podRowIndex), 
-			source.getRow(config.studentUpperRowIndex),
-			source.getRow(config.studentLowerRowIndex),
-			source.getRow(config.isoRowIndex)
-		);
-		System.out.println("Completed pairing students in same year");
-		
-		// Build the links
-		linkStudents();
-		if(config.d2Links != null) {
-			linkD2Students(config.nameLookup, config.d2Links);
+			practiceLookup = await(practices);
+			clusterLookup = await(clusters);
+			System.out.println("Practice and Cluster Information Obtained");
+			
+			// Pair all the students together
+			config.nameLookup = await(names);
+			pairStudents(
+				config.nameLookup,
+				await(perio),
+				config.podRowIndex, 
+				config.studentUpperRowIndex,
+				config.studentLowerRowIndex,
+				config.isoRowIndex
+			);
+			System.out.println("Completed pairing students in same year");
+			
+			// Build the links
+			linkStudents();
+			if(config.d2Links != null) {
+				linkD2Students(config.nameLookup, config.d2Links);
+			}
+			
+			System.out.println("Completed linking students across years");
+			students = StudentIndex.of(getRosterSorted());
+	
+			await(weeks);
+			System.out.println("Collected lecture dates");
+			
+			// Compile the rotation of every student for every week of the grid
+			compileRotationMatrix(loader);
+		} finally {
+			loader.shutdownNow();
 		}
 		
-		System.out.println("Completed linking students across years");
-
-		// Read the D3, D4, and Huddle Dates
-		readLectureHuddles(config.firstDateRowIndex, config.lastDateRowIndex);
-		System.out.println("Collected lecture dates");
-		
-		// Initialize populate the rotation schedule for each student
-		Set<Student> completed = new HashSet<Student>();
+		registerRotations();
+	}
+	
+	private static <T> CompletableFuture<T> stage(ExecutorService loader, Callable<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.call();
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, loader);
+	}
+	
+	/**
+	 * Waits for the stage, rethrowing the exception it failed with
+	 */
+	private static <T> T await(CompletableFuture<T> stage) throws IOException {
+		try {
+			return stage.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Restores a reader from a snapshot written by writeSnapshot(), without a source sheet
+	 */
+	protected XOGridReader(ByteBuffer snapshot, ReaderConfig config) {
+		this.source = null;
+		this.config = config;
+		readSnapshot(snapshot);
+		students = StudentIndex.of(getRosterSorted());
+		indexDays();
+		registerRotations();
+	}
+	
+	/**
+	 * Initialize populate the rotation schedule for each student
+	 */
+	private void registerRotations() {
 		Map<Student, List<LocalDate>> unknownAssignment = new TreeMap<Student, List<LocalDate>>();
 		for(Student s : schedule.keySet()) {
-			if(completed.contains(s)) {
-				continue;
-			}
-			
-			int colIndex = schedule.get(s).getColumnIndex();
-			Student partner = s.getPartner();
-
 			for(LocalDate date : dateToIndex.keySet()) {
-				Cell c = dateToIndex.get(date).getRow().getCell(colIndex);
-				String entry = XOGridUtils.df.formatCellValue(c).toUpperCase();
-				Rotation r = Rotation.toRotation(entry);
-				
+				Rotation r = getRotationFromMatrix(s, date);
 				if(r == Rotation.UNKNOWN) {
 					List<LocalDate> l = unknownAssignment.get(s);
 					if(l == null) {
 						unknownAssignment.put(s, l = new ArrayList<LocalDate>());
 					}
 					l.add(date);
-					
-					if(partner != Student.PLACEHOLDER) {
-						l = unknownAssignment.get(partner);
-						if(l == null) {
-							unknownAssignment.put(partner, l = new ArrayList<LocalDate>());
-						}
-						l.add(date);
-					}
-				} else if(r == Rotation.CLINIC) {
-					r.registerStudent(s, date);
-					if(partner != Student.PLACEHOLDER) {
-						r.registerStudent(partner, date);
-					}
-				} else if(XOGridUtils.ROTATION_UPPER_ONLY.matcher(entry).matches()) {
-					int rowIndex = schedule.get(s).getRowIndex();
-					if(rowIndex == config.studentUpperRowIndex) {
-						r.registerStudent(s, date);
-						if(partner != Student.PLACEHOLDER) {
-							Rotation.CLINIC.registerStudent(partner, date);
-						}
-					} else if(partner != Student.PLACEHOLDER){
-						r.registerStudent(partner, date);
-						Rotation.CLINIC.registerStudent(s, date);
-					}
-				} else if(XOGridUtils.ROTATION_LOWER_ONLY.matcher(entry).matches()) {
-					int rowIndex = schedule.get(s).getRowIndex();
-					if(rowIndex == config.studentUpperRowIndex) {
-						Rotation.CLINIC.registerStudent(s, date);
-						if(partner != Student.PLACEHOLDER) {
-							r.registerStudent(partner, date);
-						}
-					} else if(partner != Student.PLACEHOLDER){
-						r.registerStudent(s, date);
-						if(partner != Student.PLACEHOLDER) {
-							Rotation.CLINIC.registerStudent(partner, date);
-						}
-					}
 				} else {
 					r.registerStudent(s, date);
-					if(partner != Student.PLACEHOLDER) {
-						r.registerStudent(partner, date);
-					}
 				}
 			}
-			
-			completed.add(s);
-			if(partner != Student.PLACEHOLDER) {
-				completed.add(partner);
-			}
 		}
 		
+		RotationLabel.reportUnrecognized();
 		if(unknownAssignment.size() != 0) {
 			System.err.println("Unknown assignments detected");
 			for(Student s : unknownAssignment.keySet()) {
@@ -266,15 +314,278 @@ public abstract class XOGridReader {
 		}
 	}
 	
+	/**
+	 * Parses every grid cell once into rotationMatrix, resolving the upper/lower only rotations
+	 * to CLINIC for the student in the other row
+	 */
+	private void compileRotationMatrix(ExecutorService loader) throws IOException {
+		if(ROTATIONS.length > Byte.MAX_VALUE) {
+			throw new RuntimeException("Too many rotations to store as a byte: " + ROTATIONS.length);
+		}
+
+		indexStudents();
+		
+		if(dateToIndex.isEmpty()) {
+			rotationMatrix = new byte[0][];
+			return;
+		}
+		
+		firstWeek = SODDateUtils.floorToLastMonday(SODDateUtils.toEpochDay(dateToIndex.firstKey()));
+		rotationMatrix = new byte[SODDateUtils.weekIndex(SODDateUtils.toEpochDay(dateToIndex.lastKey()), firstWeek) + 1][];
+		
+		// Every week is its own row of the matrix, so the weeks are parsed concurrently
+		List<CompletableFuture<Void>> weeks = new ArrayList<CompletableFuture<Void>>();
+		for(LocalDate date : dateToIndex.keySet()) {
+			int row = dateToIndex.get(date);
+			int week = SODDateUtils.weekIndex(SODDateUtils.toEpochDay(date), firstWeek);
+			weeks.add(stage(loader, () -> {
+				rotationMatrix[week] = readWeek(source, row);
+				return null;
+			}));
+		}
+		
+		for(CompletableFuture<Void> week : weeks) {
+			await(week);
+		}
+	}
+	
+	private byte[] readWeek(GridSheet sheet, int row) {
+		byte[] rotations = new byte[studentIndex.size()];
+		for(Student s : schedule.keySet()) {
+			CellAddress address = schedule.get(s);
+			RotationLabel label = RotationLabel.of(sheet.getText(row, address.getColumn()));
+			rotations[studentIndex.get(s)] = (byte)label.resolve(address.getRow() == config.studentUpperRowIndex).ordinal();
+		}
+		return rotations;
+	}
+	
+	/**
+	 * Applies an edited revision of the grid in place: the rotations, lectures, huddles, breaks and priority
+	 * of every week are re-read, and the Rotation registrations of the students whose rotation changed are updated.
+	 * The revision must have the same students in the same cells and the same weeks in the same rows.
+	 * @return the changes applied
+	 */
+	public XOGridChanges reingest(GridSheet revision) throws IOException {
+		for(Student s : schedule.keySet()) {
+			CellAddress address = schedule.get(s);
+			String id = revision.getText(address.getRow(), address.getColumn());
+			if(id.length() == 0 || !sanitizeStudentID(id).equals(s.id)) {
+				throw new RuntimeException("Expected " + s.id + " in " + address + " of the revision but found " + (id.length() == 0 ? "an empty cell" : id) + "; reload the grid instead");
+			}
+		}
+		
+		XOGridChanges changes = new XOGridChanges();
+		
+		// Re-read the week attributes, restoring the current ones if the weeks moved
+		GridSheet previous = source;
+		Map<LocalDate, Integer> _dateToIndex = new TreeMap<LocalDate, Integer>(dateToIndex);
+		Set<LocalDate> _d4Lecture = new TreeSet<LocalDate>(d4Lecture);
+		Set<LocalDate> _d3Lecture = new TreeSet<LocalDate>(d3Lecture);
+		Set<LocalDate> _huddles = new TreeSet<LocalDate>(huddles);
+		Set<LocalDate> _breaks = new TreeSet<LocalDate>(breaks);
+		Map<LocalDate, UpperLower> _priority = new TreeMap<LocalDate, UpperLower>(priority);
+		
+		source = revision;
+		clearWeeks();
+		readLectureHuddles(config.firstDateRowIndex, config.lastDateRowIndex);
+		readWeekAttributes();
+		indexDays();
+		if(!dateToIndex.equals(_dateToIndex)) {
+			source = previous;
+			clearWeeks();
+			dateToIndex.putAll(_dateToIndex);
+			d4Lecture.addAll(_d4Lecture);
+			d3Lecture.addAll(_d3Lecture);
+			huddles.addAll(_huddles);
+			breaks.addAll(_breaks);
+			priority.putAll(_priority);
+			indexDays();
+			throw new RuntimeException("The weeks of the revision do not match the loaded grid; reload the grid instead");
+		}
+		
+		addChangedWeeks(_d4Lecture, d4Lecture, changes);
+		addChangedWeeks(_d3Lecture, d3Lecture, changes);
+		addChangedWeeks(_huddles, huddles, changes);
+		addChangedWeeks(_breaks, breaks, changes);
+		for(LocalDate date : dateToIndex.keySet()) {
+			LocalDate monday = SODDateUtils.floorToLastMonday(date);
+			if(_priority.get(monday) != priority.get(monday)) {
+				changes.addCalendarWeek(monday);
+			}
+		}
+		
+		// Compare the rotations week by week, updating the registrations of the students that changed
+		for(LocalDate date : dateToIndex.keySet()) {
+			int week = SODDateUtils.weekIndex(SODDateUtils.toEpochDay(date), firstWeek);
+			byte[] before = rotationMatrix[week];
+			byte[] after = readWeek(revision, dateToIndex.get(date));
+			for(Student s : schedule.keySet()) {
+				int index = studentIndex.get(s);
+				if(before[index] == after[index]) {
+					continue;
+				}
+				
+				Rotation _before = ROTATIONS[before[index]];
+				Rotation _after = ROTATIONS[after[index]];
+				if(_before != Rotation.UNKNOWN) {
+					_before.unregisterStudent(s, date);
+				}
+				if(_after != Rotation.UNKNOWN) {
+					_after.registerStudent(s, date);
+				}
+				changes.addRotationChange(s, SODDateUtils.floorToLastMonday(date), _before, _after);
+			}
+			rotationMatrix[week] = after;
+		}
+		
+		if(previous == null) {
+			source = null; // stay detached
+		}
+		
+		if(!changes.isEmpty()) {
+			model = null;
+			modelVersion++;
+		}
+		students = StudentIndex.of(getRosterSorted()); // the index does not follow the students it was built from
+		
+		RotationLabel.reportUnrecognized();
+		System.out.println("Reingested X-O grid: " + changes);
+		return changes;
+	}
+	
+	private void clearWeeks() {
+		dateToIndex.clear();
+		d4Lecture.clear();
+		d3Lecture.clear();
+		huddles.clear();
+		breaks.clear();
+		priority.clear();
+	}
+	
+	private static void addChangedWeeks(Set<LocalDate> before, Set<LocalDate> after, XOGridChanges changes) {
+		for(LocalDate date : before) {
+			if(!after.contains(date)) {
+				changes.addCalendarWeek(SODDateUtils.floorToLastMonday(date));
+			}
+		}
+		for(LocalDate date : after) {
+			if(!before.contains(date)) {
+				changes.addCalendarWeek(SODDateUtils.floorToLastMonday(date));
+			}
+		}
+	}
+	
+	private void indexStudents() {
+		int index = 0;
+		for(Student s : schedule.keySet()) {
+			studentIndex.put(s, index++);
+		}
+	}
+	
+	/**
+	 * Drops the sheets the reader was loaded from, keeping only the parsed grid, so the input workbook
+	 * can be garbage collected before the report builds its own. Only reingest() reads a sheet afterwards.
+	 */
+	public void detach() {
+		source = null;
+		config.names = null;
+		config.d2Links = null;
+		config.nameLookup = null;
+	}
+	
+	public boolean isDetached() {
+		return source == null;
+	}
+	
+	private void indexDays() {
+		TreeSet<LocalDate> dates = new TreeSet<LocalDate>(dateToIndex.keySet());
+		dates.addAll(d3Lecture);
+		dates.addAll(d4Lecture);
+		dates.addAll(huddles);
+		dates.addAll(breaks);
+		if(dates.isEmpty()) {
+			throw new RuntimeException("No dates were read from the X-O grid");
+		}
+		days = AcademicDayIndex.of(dates.first(), dates.last(), d3Lecture, d4Lecture, huddles, breaks, priority, this::isPracticeHuddle);
+	}
+	
+	/**
+	 * @return the students created by this reader, leaving out those Student.getStudentsSorted() leaves out
+	 */
+	private TreeSet<Student> getRosterSorted() {
+		return roster.stream().filter(s -> s.year != StudentYear.GRADUATE && s.year != StudentYear.UNKNOWN && s.year != StudentYear.FIFTH_YEAR).collect(Collectors.toCollection(TreeSet::new));
+	}
+	
+	/**
+	 * @return the students and rotations of the grid as an immutable model, independent of later changes to
+	 * the static Rotation state
+	 */
+	public synchronized ScheduleModel getModel() {
+		if(model == null) {
+			Map<Student, Map<LocalDate, Rotation>> rotations = new HashMap<Student, Map<LocalDate, Rotation>>();
+			for(Student s : schedule.keySet()) {
+				Map<LocalDate, Rotation> m = new HashMap<LocalDate, Rotation>();
+				for(LocalDate date : dateToIndex.keySet()) {
+					m.put(date, getRotationFromMatrix(s, date));
+				}
+				rotations.put(s, m);
+			}
+			model = ScheduleModel.of(modelVersion, getRosterSorted(), rotations);
+		}
+		return model;
+	}
+	
+	public StudentIndex getStudentIndex() {
+		return students;
+	}
+	
+	public AcademicDayIndex getDayIndex() {
+		return days;
+	}
+	
+	private void readWeekAttributes() {
+		for(LocalDate date : dateToIndex.keySet()) {
+			int row = dateToIndex.get(date);
+			LocalDate monday = SODDateUtils.floorToLastMonday(date);
+			if(isBreakColor(source.getFillColor(row, 0))) {
+				breaks.add(monday);
+			}
+			
+			String value = source.getText(row, 1);
+			if(value.equals("U")) {
+				priority.put(monday, UpperLower.UPPER);
+			} else if(value.equals("L")) {
+				priority.put(monday, UpperLower.LOWER);
+			}
+		}
+	}
+	
+	/**
+	 * O(1) lookup of the rotation compiled at load
+	 * @return the rotation of the student for the week containing the date, or UNKNOWN if either is not in the grid
+	 */
+	protected Rotation getRotationFromMatrix(Student s, LocalDate date) {
+		Integer index = studentIndex.get(s);
+		if(index == null) {
+			return Rotation.UNKNOWN;
+		}
+		
+		int week = SODDateUtils.weekIndex(SODDateUtils.toEpochDay(date), firstWeek);
+		if(week < 0 || week >= rotationMatrix.length || rotationMatrix[week] == null) {
+			return Rotation.UNKNOWN;
+		}
+		return ROTATIONS[rotationMatrix[week][index]];
+	}
+	
 	public abstract AcademicCalendar getAcademicCalendar();
 	
 	protected Map<String, Pair<PerioSession, PerioGroup>> getPerioInfo() throws IOException {
 		return new HashMap<String, Pair<PerioSession, PerioGroup>>();
 	}
 	
-	protected void pairStudents(NamesLookup names, Map<String, Pair<PerioSession, PerioGroup>> perio, Row podIdentifier, Row studentPair1, Row studentPair2, Row isoIdentifier) {
+	protected void pairStudents(NamesLookup names, Map<String, Pair<PerioSession, PerioGroup>> perio, int podIdentifier, int studentPair1, int studentPair2, int isoIdentifier) {
 		
-		int limit = studentPair1.getLastCellNum();
+		int limit = source.getLastCellNum(studentPair1);
 		if(AcademicCalendar.CURRENT_YEAR == AcademicCalendar.AY2022_2023) {
 			limit = 114;
 		}
@@ -283,8 +594,7 @@ public abstract class XOGridReader {
 			index++;
 			
 			Student a = Student.PLACEHOLDER;
-			Cell cell_A = studentPair1.getCell(index);
-			String id_A = XOGridUtils.df.formatCellValue(cell_A);			
+			String id_A = source.getText(studentPair1, index);
 			if(id_A.length() != 0 && Student.STUDENT_ID_PATTERN.matcher(id_A).matches()) {
 				String studentId = sanitizeStudentID(id_A);
 				Name name = names.getName(studentId);
@@ -302,13 +612,13 @@ public abstract class XOGridReader {
 					UpperLower.UPPER
 				);
 				if(a != Student.PLACEHOLDER) {
-					schedule.put(a, cell_A);
+					schedule.put(a, new CellAddress(studentPair1, index));
+					roster.add(a);
 				}
 			}
 			
 			Student b = Student.PLACEHOLDER;
-			Cell cell_B = studentPair2.getCell(index);
-			String id_B = XOGridUtils.df.formatCellValue(cell_B);
+			String id_B = source.getText(studentPair2, index);
 			if(id_B.length() != 0 && Student.STUDENT_ID_PATTERN.matcher(id_B).matches()) {
 				String studentId = sanitizeStudentID(id_B);
 				Name name = names.getName(studentId);
@@ -326,7 +636,8 @@ public abstract class XOGridReader {
 					UpperLower.LOWER
 				);
 				if(b != Student.PLACEHOLDER) {
-					schedule.put(b, cell_B);
+					schedule.put(b, new CellAddress(studentPair2, index));
+					roster.add(b);
 				}
 			}
 			
@@ -338,30 +649,30 @@ public abstract class XOGridReader {
 		return "S" + id;
 	}
 	
-	protected char extractPod(Row podIdentifier, int index) {
-		return XOGridUtils.df.formatCellValue(podIdentifier.getCell(index)).charAt(0);
+	protected char extractPod(int podIdentifier, int index) {
+		return source.getText(podIdentifier, index).charAt(0);
 	}
 	
-	protected GenericSession extractISO(Row isoIdentifier, int index) {
-		return GenericSession.toSession(XOGridUtils.df.formatCellValue(isoIdentifier.getCell(index)));
+	protected GenericSession extractISO(int isoIdentifier, int index) {
+		return GenericSession.toSession(source.getText(isoIdentifier, index));
 	}
 	
-	protected void linkD2Students(NamesLookup names, Sheet s) {
+	protected void linkD2Students(NamesLookup names, GridSheet s) {
 		throw new RuntimeException("Method is not implemented");
 	}
 	
 	protected void linkStudents() {
-		for(Cell c : schedule.values()) {
-			Student s = Student.getStudent("S" + XOGridUtils.df.formatCellValue(c));
+		for(CellAddress c : schedule.values()) {
+			Student s = Student.getStudent("S" + source.getText(c.getRow(), c.getColumn()));
 			if(s.getPrimaryLink() != Student.PLACEHOLDER) { // student has already been linked, move to the next student
 				continue;
 			}
 			
-			int index = c.getColumnIndex();
+			int index = c.getColumn();
 			boolean moveRight = s.year == StudentYear.FOURTH_YEAR;
 			String s2_id;
 			do {
-				s2_id = XOGridUtils.df.formatCellValue(c.getRow().getCell(index + (moveRight ? 1 : -1)));
+				s2_id = source.getText(c.getRow(), index + (moveRight ? 1 : -1));
 				if(moveRight) {
 					index++;
 				} else {
@@ -407,7 +718,7 @@ public abstract class XOGridReader {
 	}
 	
 	public boolean isD3LectureDate(LocalDate date) {
-		return d3Lecture.contains(date);
+		return days.isD3Lecture(date);
 	}
 	
 	// TODO: fix the dates to a quarter in the academic calendar
@@ -438,7 +749,7 @@ public abstract class XOGridReader {
 	}
 	
 	public boolean isD4LectureDate(LocalDate date) {
-		return d4Lecture.contains(date);		
+		return days.isD4Lecture(date);
 	}
 	
 	public boolean isID4LectureDate(LocalDate date) {
@@ -446,10 +757,17 @@ public abstract class XOGridReader {
 	}
 	
 	public boolean isHuddleDate(LocalDate date) {
-		return huddles.contains(date);
+		return days.isHuddle(date);
+	}
+	
+	public boolean inHuddleDate(GroupPractice practice, LocalDate date, Period p) {
+		return p.isAM() && days.isHuddle(practice, date);
 	}
 	
-	public abstract boolean inHuddleDate(GroupPractice practice, LocalDate date, Period p);
+	/**
+	 * Resolves which practice a huddle date belongs to; only called while the day index is built
+	 */
+	protected abstract boolean isPracticeHuddle(GroupPractice practice, LocalDate date);
 	
 	public boolean inLecture(Student s, LocalDate date, Period p) {
 		// Check if there is lecture
@@ -457,9 +775,9 @@ public abstract class XOGridReader {
 			return true;
 		} else if(date.getDayOfWeek() == DayOfWeek.FRIDAY) {
 			if(s.isD3() || s.isID3()) {
-				return d3Lecture.contains(date) && p.isPM();
+				return p.isPM() && days.isD3Lecture(date);
 			} else if(s.isD4() || s.isID4()) {
-				return d4Lecture.contains(date) && p.isAM();
+				return p.isAM() && days.isD4Lecture(date);
 			}
 		}
 		
@@ -497,14 +815,28 @@ public abstract class XOGridReader {
 	}
 
 	public boolean inD3Perio(Student s, LocalDate date, Period p) {
-		if(s.isD3() && getRotationByStudent(s, date, p) == Rotation.CLINIC) {
+		return inD3Perio(getModel(), s, date, p);
+	}
+	
+	/**
+	 * @param model rotations to check the student against, such as a what-if version of getModel()
+	 */
+	public boolean inD3Perio(ScheduleModel model, Student s, LocalDate date, Period p) {
+		if(s.isD3() && model.getStudents(Rotation.CLINIC, date).contains(s)) {
 			return s.d3perio == PerioSession.toSession(date, p);
 		}
 		return false;
 	}
 	
 	public boolean inID3Perio(Student s, LocalDate date, Period p) {
-		if(s.isID3() && getRotationByStudent(s, date, p) == Rotation.CLINIC) {
+		return inID3Perio(getModel(), s, date, p);
+	}
+	
+	/**
+	 * @param model rotations to check the student against, such as a what-if version of getModel()
+	 */
+	public boolean inID3Perio(ScheduleModel model, Student s, LocalDate date, Period p) {
+		if(s.isID3() && model.getStudents(Rotation.CLINIC, date).contains(s)) {
 			return s.d3perio == PerioSession.toSession(date, p);
 		}
 		return false;
@@ -516,14 +848,14 @@ public abstract class XOGridReader {
 			return false;
 		}
 		
-		return schedule.get(s).getRowIndex() == config.studentUpperRowIndex;
+		return schedule.get(s).getRow() == config.studentUpperRowIndex;
 	}
 	
 	public boolean isLowerStudent(Student s) {
 		if(!schedule.containsKey(s)) {
 			return false;
 		}
-		return schedule.get(s).getRowIndex() == config.studentLowerRowIndex;
+		return schedule.get(s).getRow() == config.studentLowerRowIndex;
 	}
 	
 	@Deprecated
@@ -531,27 +863,11 @@ public abstract class XOGridReader {
 	 * Use getPriority(LocalDate date) instead
 	 */
 	public boolean isUpperPriority(LocalDate date) {
-		return dateToIndex.get(SODDateUtils.floorToLastMonday(date)).getRow().getCell(1).getStringCellValue().equals("U");
+		return getPriority(date) == UpperLower.UPPER;
 	}
 	
 	public UpperLower getPriority(LocalDate date) {
-		
-		String value;
-		{
-			Cell c = dateToIndex.get(SODDateUtils.floorToLastMonday(date));
-			if(c == null) {
-				return UpperLower.UNKNOWN;
-			}
-			value = c.getRow().getCell(1).getStringCellValue();
-		}
-
-		if(value.equals("U")) {
-			return UpperLower.UPPER;
-		} else if(value.equals("L")) {
-			return UpperLower.LOWER;
-		}
-		
-		return UpperLower.UNKNOWN;
+		return days.getPriority(date);
 	}
 
 	public int getRotationISOScheme(LocalDate date) {
@@ -563,7 +879,7 @@ public abstract class XOGridReader {
 	}
 	
 	public boolean isClinicBreak(LocalDate date) {
-		return isBreakColor(ExcelUtil.getForegroundColor(dateToIndex.get(SODDateUtils.floorToLastMonday(date))).getHexString());
+		return days.isClinicBreak(date);
 	}
 	
 	public LocalDate getFirstDate() {
@@ -575,10 +891,9 @@ public abstract class XOGridReader {
 	}
 	
 	protected int[] generateClusterLookup(int clusterRowIndex) {
-		return source.getMergedRegions()
+		return source.getMergedRegionIndex()
+			.getRegionsInRow(clusterRowIndex)
 			.stream()
-			.filter(a -> a.containsRow(clusterRowIndex))
-			.sorted((CellRangeAddress a1, CellRangeAddress a2) -> (a1.getFirstColumn() < a2.getFirstColumn() ? -1 : 1))
 			.mapToInt(a -> (a.getLastColumn() + 1))
 			.toArray();
 	}
@@ -587,10 +902,9 @@ public abstract class XOGridReader {
 	protected abstract Cluster getCluster(int index);
 	
 	protected int[] generatePracticeLookup(int practiceRowIndex) {
-		 return source.getMergedRegions()
+		 return source.getMergedRegionIndex()
+			.getRegionsInRow(practiceRowIndex)
 			.stream()
-			.filter(a -> a.containsRow(practiceRowIndex))
-			.sorted((CellRangeAddress a1, CellRangeAddress a2) -> (a1.getFirstColumn() < a2.getFirstColumn() ? -1 : 1))
 			.mapToInt(a -> (a.getLastColumn() + 1))
 			.toArray();
 	}
@@ -644,4 +958,190 @@ public abstract class XOGridReader {
 	public Set<LocalDate> getD4LectureDates() {
 		return new TreeSet<LocalDate>(d4Lecture);
 	}
+	
+	/*
+	 * 		SNAPSHOT
+	 */
+	
+	/**
+	 * Writes the fully built reader state: students, links, grid coordinates, dates and the rotation matrix
+	 */
+	protected void writeSnapshot(DataOutputStream out) throws IOException {
+		
+		// Students in creation order, which the iteration order of the practice and pod sets depends on
+		out.writeInt(roster.size());
+		for(Student s : roster) {
+			writeString(out, s.id);
+			writeString(out, s.first);
+			writeString(out, s.last);
+			writeString(out, s.email);
+			out.writeByte(ordinal(s.practice));
+			out.writeByte(ordinal(s.cluster));
+			out.writeChar(s.pod);
+			out.writeByte(ordinal(s.iso));
+			out.writeByte(ordinal(s.d3perio));
+			out.writeByte(ordinal(s.perioGroup));
+			out.writeByte(ordinal(s.priority));
+		}
+		
+		// Links, written from the D3/D4 side so that replaying them reproduces the D2 links
+		out.writeInt(schedule.size());
+		for(Student s : schedule.keySet()) {
+			writeString(out, s.id);
+			writeString(out, s.getPartner().id);
+			writeString(out, s.getPrimaryLink().id);
+			writeString(out, s.getSecondaryLink().id);
+			out.writeInt(schedule.get(s).getRow());
+			out.writeInt(schedule.get(s).getColumn());
+		}
+		
+		out.writeInt(dateToIndex.size());
+		for(LocalDate date : dateToIndex.keySet()) {
+			out.writeLong(date.toEpochDay());
+			out.writeInt(dateToIndex.get(date));
+		}
+		
+		writeDates(out, d3Lecture);
+		writeDates(out, d4Lecture);
+		writeDates(out, huddles);
+		writeDates(out, breaks);
+		
+		out.writeInt(priority.size());
+		for(LocalDate date : priority.keySet()) {
+			out.writeLong(date.toEpochDay());
+			out.writeByte(priority.get(date).ordinal());
+		}
+		
+		writeInts(out, practiceLookup);
+		writeInts(out, clusterLookup);
+		
+		out.writeLong(firstWeek);
+		out.writeInt(rotationMatrix.length);
+		for(byte[] week : rotationMatrix) {
+			out.writeInt(week == null ? -1 : week.length);
+			if(week != null) {
+				out.write(week);
+			}
+		}
+	}
+	
+	private void readSnapshot(ByteBuffer in) {
+		
+		for(int i = in.getInt(); i > 0; i--) {
+			String id = readString(in);
+			String first = readString(in);
+			String last = readString(in);
+			String email = readString(in);
+			roster.add(Student.createStudent(id, first, last, email,
+				value(GroupPractice.values(), in.get()),
+				value(Cluster.values(), in.get()),
+				in.getChar(),
+				value(GenericSession.values(), in.get()),
+				value(PerioSession.values(), in.get()),
+				value(PerioGroup.values(), in.get()),
+				value(UpperLower.values(), in.get())
+			));
+		}
+		
+		List<Student[]> links = new ArrayList<Student[]>();
+		for(int i = in.getInt(); i > 0; i--) {
+			Student s = Student.getStudent(readString(in));
+			links.add(new Student[] { s, toStudent(readString(in)), toStudent(readString(in)), toStudent(readString(in)) });
+			schedule.put(s, new CellAddress(in.getInt(), in.getInt()));
+		}
+		
+		for(Student[] l : links) {
+			if(l[1] != Student.PLACEHOLDER && l[0].getPartner() == Student.PLACEHOLDER) {
+				Student.pair(l[0], l[1]);
+			}
+		}
+		for(Student[] l : links) {
+			if(l[2] != Student.PLACEHOLDER && l[0].getPrimaryLink() == Student.PLACEHOLDER) {
+				Student.primaryLink(l[0], l[2]);
+			}
+		}
+		for(Student[] l : links) {
+			if(l[3] != Student.PLACEHOLDER && l[0].getSecondaryLink() == Student.PLACEHOLDER) {
+				Student.secondaryLink(l[0], l[3]);
+			}
+		}
+		
+		for(int i = in.getInt(); i > 0; i--) {
+			dateToIndex.put(LocalDate.ofEpochDay(in.getLong()), in.getInt());
+		}
+		
+		readDates(in, d3Lecture);
+		readDates(in, d4Lecture);
+		readDates(in, huddles);
+		readDates(in, breaks);
+		
+		for(int i = in.getInt(); i > 0; i--) {
+			priority.put(LocalDate.ofEpochDay(in.getLong()), UpperLower.values()[in.get()]);
+		}
+		
+		practiceLookup = readInts(in);
+		clusterLookup = readInts(in);
+		
+		indexStudents();
+		firstWeek = (int)in.getLong();
+		rotationMatrix = new byte[in.getInt()][];
+		for(int i = 0; i < rotationMatrix.length; i++) {
+			int length = in.getInt();
+			if(length >= 0) {
+				in.get(rotationMatrix[i] = new byte[length]);
+			}
+		}
+	}
+	
+	private static int ordinal(Enum<?> e) {
+		return e == null ? -1 : e.ordinal();
+	}
+	
+	private static <E> E value(E[] values, byte ordinal) {
+		return ordinal < 0 ? null : values[ordinal];
+	}
+	
+	private static Student toStudent(String id) {
+		return Student.PLACEHOLDER.id.equals(id) ? Student.PLACEHOLDER : Student.getStudent(id);
+	}
+	
+	private static void writeDates(DataOutputStream out, Set<LocalDate> dates) throws IOException {
+		out.writeInt(dates.size());
+		for(LocalDate date : dates) {
+			out.writeLong(date.toEpochDay());
+		}
+	}
+	
+	private static void readDates(ByteBuffer in, Set<LocalDate> dates) {
+		for(int i = in.getInt(); i > 0; i--) {
+			dates.add(LocalDate.ofEpochDay(in.getLong()));
+		}
+	}
+	
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int i : values) {
+			out.writeInt(i);
+		}
+	}
+	
+	private static int[] readInts(ByteBuffer in) {
+		int[] values = new int[in.getInt()];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = in.getInt();
+		}
+		return values;
+	}
+	
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] b = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+	
+	private static String readString(ByteBuffer in) {
+		byte[] b = new byte[in.getInt()];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
 }
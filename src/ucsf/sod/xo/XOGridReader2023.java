@@ -1,6 +1,8 @@
 package ucsf.sod.xo;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.Month;
@@ -8,18 +10,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.IntPredicate;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
 
 import ucsf.sod.objects.GenericPeriod;
 import ucsf.sod.objects.Period;
 import ucsf.sod.objects.StudentYear;
-import ucsf.sod.util.ExcelUtil;
+import ucsf.sod.util.GridSheet;
 import ucsf.sod.util.SODDateUtils;
+import ucsf.sod.util.SODUtil;
+import ucsf.sod.util.StreamingGridSheet;
+import ucsf.sod.util.WorkbookGridSheet;
 import ucsf.sod.xo.calendar.AcademicCalendar;
 import ucsf.sod.xo.objects.GroupPractice;
 import ucsf.sod.xo.objects.PerioSession;
@@ -44,6 +48,7 @@ public class XOGridReader2023 extends XOGridReader {
 	private static final int LAST_DATE_ROW_INDEX = 63;
 	private static final int LEGEND_GENERAL_ROW_START_INDEX = 65;
 	private static final int LEGEND_LECTURE_COL_INDEX = 16;
+	private static final IntPredicate GRID_ROWS = row -> row <= LEGEND_GENERAL_ROW_START_INDEX + 3; // rows of sheet 0 read when streaming
 	
 	// Special Dates of Interest
 	// TODO: figure out how to not hardcode these dates
@@ -71,7 +76,76 @@ public class XOGridReader2023 extends XOGridReader {
 	);
 	
 	public static XOGridReader2023 of(Workbook wb) throws IOException {
-		ReaderConfig config = new ReaderConfig(wb.getSheet("Names"), wb.getSheet("Links"));
+		return new XOGridReader2023(WorkbookGridSheet.of(wb.getSheetAt(0)), configure(new ReaderConfig(wb.getSheet("Names"), wb.getSheet("Links"))));
+	}
+	
+	public static XOGridReader2023 of(String path) throws IOException {
+		return of(new File(path));
+	}
+	
+	/**
+	 * Reads the X-O grid from a file, restoring from the snapshot of an unchanged grid when available.
+	 * Otherwise .xlsx files are streamed rather than building the Workbook, and a snapshot is written.
+	 * The returned reader is detached from the file's sheets.
+	 */
+	public static XOGridReader2023 of(File f) throws IOException {
+		byte[] hash = XOGridSnapshot.hash(f);
+		ByteBuffer snapshot = XOGridSnapshot.read(f, hash, XOGridReader2023.class);
+		if(snapshot != null) {
+			System.out.println("Restoring X-O grid from snapshot " + XOGridSnapshot.getSnapshotFile(f));
+			Set<Student> before = Student.getStudentsSorted(s -> true);
+			try {
+				return new XOGridReader2023(snapshot, configure(new ReaderConfig((GridSheet)null, null)));
+			} catch (RuntimeException e) {
+				// A body that passed its checksum yet does not decode; drop the students made from it before reading the grid
+				System.err.println("Unable to restore snapshot " + XOGridSnapshot.getSnapshotFile(f) + ", reading the grid instead: " + e);
+				Student.getStudentsSorted(s -> !before.contains(s)).forEach(Student::discard);
+				XOGridSnapshot.discard(f);
+			}
+		}
+		
+		XOGridReader2023 reader = read(f);
+		reader.detach();
+		XOGridSnapshot.write(f, hash, reader);
+		return reader;
+	}
+	
+	private static XOGridReader2023 read(File f) throws IOException {
+		if(!f.getName().endsWith(".xlsx")) {
+			return of(SODUtil.openWorkbook(f));
+		}
+		
+		Map<String, GridSheet> sheets = StreamingGridSheet.read(f, (index, name) -> {
+			if(index == 0) {
+				return GRID_ROWS;
+			} else if("Names".equals(name) || "Links".equals(name)) {
+				return StreamingGridSheet.ALL_ROWS;
+			}
+			return null;
+		});
+		
+		GridSheet grid = sheets.values().iterator().next();
+		return new XOGridReader2023(grid, configure(new ReaderConfig(sheets.get("Names"), sheets.get("Links"))));
+	}
+	
+	/**
+	 * Applies an edited revision of the X-O grid file in place and refreshes its snapshot
+	 * @see XOGridReader#reingest(GridSheet)
+	 */
+	public XOGridChanges reingest(File f) throws IOException {
+		GridSheet revision;
+		if(!f.getName().endsWith(".xlsx")) {
+			revision = WorkbookGridSheet.of(SODUtil.openWorkbook(f).getSheetAt(0));
+		} else {
+			revision = StreamingGridSheet.read(f, (index, name) -> index == 0 ? GRID_ROWS : null).values().iterator().next();
+		}
+		
+		XOGridChanges changes = reingest(revision);
+		XOGridSnapshot.write(f, XOGridSnapshot.hash(f), this);
+		return changes;
+	}
+	
+	private static ReaderConfig configure(ReaderConfig config) {
 		config.practiceRowIndex = PRACTICE_ROW_INDEX;
 		config.clusterRowIndex = CLUSTER_ROW_INDEX;
 		config.podRowIndex = POD_ROW_INDEX;
@@ -80,11 +154,15 @@ public class XOGridReader2023 extends XOGridReader {
 		config.isoRowIndex = ISO_ROW_INDEX;
 		config.firstDateRowIndex = FIRST_DATE_ROW_INDEX;
 		config.lastDateRowIndex = LAST_DATE_ROW_INDEX;
-		return new XOGridReader2023(wb, config);
+		return config;
+	}
+	
+	private XOGridReader2023(GridSheet source, ReaderConfig config) throws IOException {
+		super(source, config);
 	}
 	
-	private XOGridReader2023(Workbook wb, ReaderConfig config) throws IOException {
-		super(wb, config);
+	private XOGridReader2023(ByteBuffer snapshot, ReaderConfig config) {
+		super(snapshot, config);
 	}
 
 	@Override
@@ -99,18 +177,18 @@ public class XOGridReader2023 extends XOGridReader {
 
 	@Override
 	protected void linkStudents() {
-		for(Cell c : schedule.values()) {
-			Student s = Student.getStudent(XOGridUtils.df.formatCellValue(c));
+		for(CellAddress c : schedule.values()) {
+			Student s = Student.getStudent(source.getText(c.getRow(), c.getColumn()));
 			if(s == null) {
 				throw new RuntimeException("Not a student: " + c);
 			} else if(s.getPrimaryLink() != Student.PLACEHOLDER) { // student has already been linked, move to the next student
 				continue;
 			}
 			
-			int index = c.getColumnIndex();
+			int index = c.getColumn();
 			boolean moveRight = s.year == StudentYear.FOURTH_YEAR;
 			String s2_id;
-			s2_id = XOGridUtils.df.formatCellValue(c.getRow().getCell(index + (moveRight ? 1 : -1)));
+			s2_id = source.getText(c.getRow(), index + (moveRight ? 1 : -1));
 			if(moveRight) {
 				index++;
 			} else {
@@ -126,8 +204,11 @@ public class XOGridReader2023 extends XOGridReader {
 	}
 	
 	@Override
-	protected void linkD2Students(NamesLookup names, Sheet s) {
-		for(Row r : s) {
+	protected void linkD2Students(NamesLookup names, GridSheet s) {
+		for(int r = 0; r <= s.getLastRowNum(); r++) {
+			if(!s.hasRow(r)) {
+				continue;
+			}
 			
 			Student d4 = Student.PLACEHOLDER;
 			Student d3 = Student.PLACEHOLDER;
@@ -136,35 +217,39 @@ public class XOGridReader2023 extends XOGridReader {
 			// Find all the students
 			{
 				String d2Id = null;
-				for(Cell c : r) {
-					String studentId = c.getStringCellValue();
-					switch(c.getAddress().getColumn()) {
+				for(int c = 0; c < s.getLastCellNum(r); c++) {
+					String studentId = s.getText(r, c);
+					if(studentId.length() == 0) {
+						continue;
+					}
+					
+					switch(c) {
 					case 0:
-						d4 = Student.getStudent(c.getStringCellValue());
+						d4 = Student.getStudent(studentId);
 						break;
 					case 1:
-						d3 = Student.getStudent(c.getStringCellValue());
+						d3 = Student.getStudent(studentId);
 						break;
 					case 2:
 						d2Id = studentId;
 						break;
 					default:
-						throw new RuntimeException("There are too many cells in row " + c.getAddress().getRow());
+						throw new RuntimeException("There are too many cells in row " + r);
 					}
 				}
 
 				Student link;
 				if(d2Id == null) {
-					System.err.println("No D2 found on row " + (r.getRowNum()+1));
+					System.err.println("No D2 found on row " + (r+1));
 					continue;
 				} else if(d4 == Student.PLACEHOLDER && d3 == Student.PLACEHOLDER) {
-					throw new RuntimeException("D2 is by themselves on row " + (r.getRowNum()+1));
+					throw new RuntimeException("D2 is by themselves on row " + (r+1));
 				} else if(d4 != Student.PLACEHOLDER) {
 					link = d4;
 				} else if(d3 != Student.PLACEHOLDER) {
 					link = d3;
 				} else {
-					throw new RuntimeException("Impossible to reach under normal circumstances in row " + (r.getRowNum()+1));
+					throw new RuntimeException("Impossible to reach under normal circumstances in row " + (r+1));
 				}
 	
 				Name name = names.getName(d2Id);
@@ -180,6 +265,7 @@ public class XOGridReader2023 extends XOGridReader {
 					null,
 					link.priority
 				);
+				roster.add(d2);
 			}			
 			
 			// Link the D4-D3-D2 together
@@ -196,20 +282,19 @@ public class XOGridReader2023 extends XOGridReader {
 	@Override
 	protected void readLectureHuddles(int firstDateRowIndex, int lastDateRowIndex) throws IOException {
 		int index = firstDateRowIndex;
-		String[] date = XOGridUtils.df.formatCellValue(source.getRow(index).getCell(0)).split("\\s");
+		String[] date = source.getText(index, 0).split("\\s");
 		String day = (date[2].split("-"))[0];
 		LocalDate time = LocalDate.of(getAcademicCalendar().startYear, Month.JUNE, Integer.parseInt(day));
-		String d4LectureColor = ExcelUtil.getForegroundColor(source.getRow(LEGEND_GENERAL_ROW_START_INDEX+1).getCell(LEGEND_LECTURE_COL_INDEX)).getHexString();
-		String huddleColor = ExcelUtil.getForegroundColor(source.getRow(LEGEND_GENERAL_ROW_START_INDEX+2).getCell(LEGEND_LECTURE_COL_INDEX)).getHexString();
-		String jointColor = ExcelUtil.getForegroundColor(source.getRow(LEGEND_GENERAL_ROW_START_INDEX+3).getCell(LEGEND_LECTURE_COL_INDEX)).getHexString();
+		String d4LectureColor = source.getFillColor(LEGEND_GENERAL_ROW_START_INDEX+1, LEGEND_LECTURE_COL_INDEX);
+		String huddleColor = source.getFillColor(LEGEND_GENERAL_ROW_START_INDEX+2, LEGEND_LECTURE_COL_INDEX);
+		String jointColor = source.getFillColor(LEGEND_GENERAL_ROW_START_INDEX+3, LEGEND_LECTURE_COL_INDEX);
 		
 		do {
-			//System.out.println(getForegroundColor(source.getRow(index).getCell(0)).getHexString());
-			Cell c = source.getRow(index++).getCell(0);
-			dateToIndex.put(time, c);
+			int row = index++;
+			dateToIndex.put(time, row);
 			LocalDate friDate = SODDateUtils.ceilingToDayOfWeek(time, DayOfWeek.FRIDAY);
 
-			String weekColor = ExcelUtil.getForegroundColor(c).getHexString();
+			String weekColor = source.getFillColor(row, 0);
 			if(d4LectureColor.equals(weekColor)) { // TODO: clean X-O grid to label all weeks with D4 lecture
 				d4Lecture.add(friDate);
 			} else if(huddleColor.equals(weekColor)) {
@@ -269,31 +354,24 @@ public class XOGridReader2023 extends XOGridReader {
 	protected Map<String, Pair<PerioSession, PerioGroup>> getPerioInfo() throws IOException {
 		Map<String, Pair<PerioSession, PerioGroup>> perio = new HashMap<String, Pair<PerioSession, PerioGroup>>();
 
-		Row upper = source.getRow(STUDENT_UPPER_ROW_INDEX);
-		Row lower = source.getRow(STUDENT_LOWER_ROW_INDEX);
-		Row data = source.getRow(D3_PERIO_INDEX);
-		
-		int limit = 112; //data.getLastCellNum();
+		int limit = 112; //source.getLastCellNum(D3_PERIO_INDEX);
 		int index = 0;
 		while(index < limit) {
 			index++;
 			
-			Cell d = data.getCell(index);
-			String _d = XOGridUtils.df.formatCellValue(d);
+			String _d = source.getText(D3_PERIO_INDEX, index);
 			if(_d.length() == 0) {
 				continue;
 			}
 			
 			Pair<PerioSession, PerioGroup> session = Pair.of(PerioSession.toSession(_d), PerioGroup.A);
 			
-			Cell cell_A = upper.getCell(index);
-			String id_A = XOGridUtils.df.formatCellValue(cell_A);
+			String id_A = source.getText(STUDENT_UPPER_ROW_INDEX, index);
 			if(id_A.length() != 0 && Student.STUDENT_ID_PATTERN.matcher(id_A).matches()) {
 				perio.put(id_A, session);
 			}
 			
-			Cell cell_B = lower.getCell(index);
-			String id_B = XOGridUtils.df.formatCellValue(cell_B);
+			String id_B = source.getText(STUDENT_LOWER_ROW_INDEX, index);
 			if(id_B.length() != 0 && Student.STUDENT_ID_PATTERN.matcher(id_B).matches()) {
 				perio.put(id_B, session);
 			}
@@ -313,20 +391,7 @@ public class XOGridReader2023 extends XOGridReader {
 			return Rotation.UNKNOWN;
 		}
 		
-		Cell c = dateToIndex.get(SODDateUtils.floorToLastMonday(date));
-		if(c == null) {
-			return Rotation.UNKNOWN;
-		} else {
-			String entry = XOGridUtils.df.formatCellValue(c.getRow().getCell(schedule.get(s).getColumnIndex()));
-			Rotation r = Rotation.toRotation(entry);
-			
-			if(XOGridUtils.ROTATION_UPPER_ONLY.matcher(entry).matches() && schedule.get(s).getRowIndex() == STUDENT_LOWER_ROW_INDEX) {
-				r = Rotation.CLINIC;
-			} else if(XOGridUtils.ROTATION_LOWER_ONLY.matcher(entry).matches() && schedule.get(s).getRowIndex() == STUDENT_UPPER_ROW_INDEX) {
-				r = Rotation.CLINIC;
-			}
-			return r;
-		}
+		return getRotationFromMatrix(s, date);
 	}
 
 	@Override
@@ -423,8 +488,8 @@ public class XOGridReader2023 extends XOGridReader {
 	}
 
 	@Override
-	public boolean inD3Perio(Student s, LocalDate date, Period p) {
-		if(super.inD3Perio(s, date, p)) {	
+	public boolean inD3Perio(ScheduleModel model, Student s, LocalDate date, Period p) {
+		if(super.inD3Perio(model, s, date, p)) {	
 			if(SODDateUtils.dateIsOnOrBefore(date, d3PerioLectureBegins)) {
 				return false;
 			} else if(SODDateUtils.dateIsOnOrAfter(date, d3PerioClinicBegins)) {
@@ -441,8 +506,9 @@ public class XOGridReader2023 extends XOGridReader {
 		return false;
 	}
 
-	public boolean inID3Perio(Student s, LocalDate date, Period p) {
-		if(super.inID3Perio(s, date, p)) {
+	@Override
+	public boolean inID3Perio(ScheduleModel model, Student s, LocalDate date, Period p) {
+		if(super.inID3Perio(model, s, date, p)) {
 			if(SODDateUtils.dateIsOnOrAfter(date, id3PerioClinicBegins)) {
 				if(isUpperPriority(date) && isUpperStudent(s)) {
 					return true;
@@ -457,9 +523,9 @@ public class XOGridReader2023 extends XOGridReader {
 	}
 
 	@Override
-	public boolean inHuddleDate(GroupPractice practice, LocalDate date, Period p) {
+	protected boolean isPracticeHuddle(GroupPractice practice, LocalDate date) {
 		
-		if(!isHuddleDate(date) || !p.isAM()) {
+		if(!huddles.contains(date)) {
 			return false;
 		}
 		
@@ -481,13 +547,13 @@ public class XOGridReader2023 extends XOGridReader {
 		
 		if(date.getDayOfWeek() == huddleDay) {
 			boolean passthrough = true;
-			if(practice == GroupPractice.A && !isHuddleDate(date.plusWeeks(1))) {
+			if(practice == GroupPractice.A && !huddles.contains(date.plusWeeks(1))) {
 				passthrough = false;
-			} else if(practice == GroupPractice.C && !isHuddleDate(date.minusWeeks(1))) {
+			} else if(practice == GroupPractice.C && !huddles.contains(date.minusWeeks(1))) {
 				passthrough = false;
-			} else if(practice == GroupPractice.F && !isHuddleDate(date.plusWeeks(1))) {
+			} else if(practice == GroupPractice.F && !huddles.contains(date.plusWeeks(1))) {
 				passthrough = false;
-			} else if(practice == GroupPractice.B && !isHuddleDate(date.minusWeeks(1))) {
+			} else if(practice == GroupPractice.B && !huddles.contains(date.minusWeeks(1))) {
 				passthrough = false;
 			}
 			return passthrough;
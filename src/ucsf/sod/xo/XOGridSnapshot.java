@@ -0,0 +1,186 @@
+package ucsf.sod.xo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import ucsf.sod.objects.GenericSession;
+import ucsf.sod.xo.calendar.AcademicCalendar;
+import ucsf.sod.xo.objects.GroupPractice;
+import ucsf.sod.xo.objects.PerioSession;
+import ucsf.sod.xo.objects.Rotation;
+import ucsf.sod.xo.objects.Student.Cluster;
+import ucsf.sod.xo.objects.Student.PerioGroup;
+import ucsf.sod.xo.objects.Student.UpperLower;
+
+/**
+ * Binary snapshot of a fully built XOGridReader, written next to the X-O grid and keyed by the grid's
+ * SHA-256 content hash. A snapshot whose hash, format version, fingerprint or reader does not match is ignored,
+ * as is one whose body does not match the length and checksum in its header.
+ */
+public class XOGridSnapshot {
+
+	private static final int MAGIC = 0x584F4753; // XOGS
+	private static final int VERSION = 2; // bump when the body or the classification of the grid's labels changes
+	private static final String EXTENSION = ".snapshot";
+
+	/**
+	 * Hash of the constants of the enums the body stores by ordinal, so that adding, reordering or renaming one
+	 * invalidates the snapshots written before
+	 */
+	private static final byte[] LAYOUT = layout(Rotation.values(), GroupPractice.values(), Cluster.values(), GenericSession.values(), PerioSession.values(), PerioGroup.values(), UpperLower.values());
+
+	private XOGridSnapshot() { }
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 is not available", e);
+		}
+	}
+
+	private static byte[] layout(Enum<?>[]... enums) {
+		MessageDigest digest = sha256();
+		for(Enum<?>[] values : enums) {
+			for(Enum<?> e : values) {
+				digest.update(e.name().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte)',');
+			}
+			digest.update((byte)';');
+		}
+		return digest.digest();
+	}
+
+	public static File getSnapshotFile(File grid) {
+		return new File(grid.getPath() + EXTENSION);
+	}
+
+	public static byte[] hash(File f) throws IOException {
+		MessageDigest digest = sha256();
+		try(InputStream in = new DigestInputStream(new FileInputStream(f), digest)) {
+			byte[] buffer = new byte[1 << 16];
+			while(in.read(buffer) != -1);
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * The enum layout and the academic year the grid was parsed under, which decides the year of each student and
+	 * how far the rows of the pairs are read
+	 */
+	private static byte[] fingerprint() {
+		MessageDigest digest = sha256();
+		digest.update(LAYOUT);
+		digest.update(Integer.toString(AcademicCalendar.CURRENT_YEAR.startYear).getBytes(StandardCharsets.UTF_8));
+		return digest.digest();
+	}
+
+	/**
+	 * Reads the snapshot of the grid into memory rather than mapping it, so that no mapping keeps the file from being replaced
+	 * @return the snapshot positioned after its header, or null if there is no snapshot matching the hash
+	 */
+	public static ByteBuffer read(File grid, byte[] hash, Class<? extends XOGridReader> reader) {
+		File f = getSnapshotFile(grid);
+		if(!f.exists()) {
+			return null;
+		}
+
+		try {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+			if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+				return null;
+			}
+
+			byte[] _fingerprint = new byte[in.getInt()];
+			in.get(_fingerprint);
+			if(!Arrays.equals(fingerprint(), _fingerprint)) {
+				System.err.println("Ignoring snapshot " + f + " written for another layout of the enums or academic year");
+				return null;
+			}
+
+			byte[] _hash = new byte[in.getInt()];
+			in.get(_hash);
+			byte[] _reader = new byte[in.getInt()];
+			in.get(_reader);
+			if(!Arrays.equals(hash, _hash) || !reader.getName().equals(new String(_reader, "UTF-8"))) {
+				return null;
+			}
+
+			// Checked before anything is read from the body, as restoring it registers its students
+			int length = in.getInt();
+			long checksum = in.getLong();
+			CRC32 crc = new CRC32();
+			crc.update(in.slice());
+			if(in.remaining() != length || crc.getValue() != checksum) {
+				System.err.println("Ignoring corrupt snapshot " + f);
+				return null;
+			}
+			return in;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Unable to read snapshot " + f + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the snapshot of the reader next to the grid; failures are reported and otherwise ignored
+	 */
+	public static void write(File grid, byte[] hash, XOGridReader reader) {
+		File f = getSnapshotFile(grid);
+		File tmp = new File(f.getPath() + ".tmp");
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try(DataOutputStream out = new DataOutputStream(body)) {
+				reader.writeSnapshot(out);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(body.toByteArray());
+
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				byte[] fingerprint = fingerprint();
+				out.writeInt(fingerprint.length);
+				out.write(fingerprint);
+				out.writeInt(hash.length);
+				out.write(hash);
+				byte[] _reader = reader.getClass().getName().getBytes("UTF-8");
+				out.writeInt(_reader.length);
+				out.write(_reader);
+				out.writeInt(body.size());
+				out.writeLong(crc.getValue());
+				body.writeTo(out);
+			}
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("Wrote snapshot " + f);
+		} catch (IOException e) {
+			System.err.println("Unable to write snapshot " + f + ": " + e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Deletes the snapshot of the grid, one that could not be restored
+	 */
+	public static void discard(File grid) {
+		File f = getSnapshotFile(grid);
+		if(f.exists() && !f.delete()) {
+			System.err.println("Unable to delete snapshot " + f);
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.random.RandomGenerator;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -114,10 +115,16 @@ public class XOGridUtils {
 		return l.stream().collect(Collectors.mapping(Object::toString, Collectors.toList()));
 	}
 	
-	public static Random RANDOM = new Random(9043006002886673L);
+	public static final long SEED = 9043006002886673L;
+	public static Random RANDOM = new Random(SEED);
 	
-	public static void shuffle(List<?> l) {
-		Collections.shuffle(l, RANDOM);
+	/**
+	 * Fisher-Yates shuffle drawing from any random stream; draws as Collections.shuffle() does for a Random
+	 */
+	public static void shuffle(List<?> l, RandomGenerator random) {
+		for(int i = l.size(); i > 1; i--) {
+			Collections.swap(l, i - 1, random.nextInt(i));
+		}
 	}
 	
 	public static class RotationCounter<T> {
@@ -4,10 +4,13 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import ucsf.sod.objects.Period;
 import ucsf.sod.objects.StudentYear;
 import ucsf.sod.util.SODDateUtils;
 import ucsf.sod.xo.XOGridUtils.ClinicStatus;
@@ -215,11 +218,25 @@ public enum AcademicCalendar {
 	private final Map<LocalDate, ClinicStatus> calendar;
 	public final int startYear;
 	public final int endYear;
+
+	// The status of every day from January 1 of the start year to December 31 of the end year, and which of its sessions
+	// are open: bit day * SESSIONS_PER_DAY + D3_AM, D3_PM, D4_AM or D4_PM
+	private static final int D3_AM = 0;
+	private static final int D3_PM = 1;
+	private static final int D4_AM = 2;
+	private static final int D4_PM = 3;
+	private static final int SESSIONS_PER_DAY = 4;
+	private final int firstDay; // epoch day of January 1 of the start year
+	private final ClinicStatus[] days;
+	private final BitSet open;
 	
 	private AcademicCalendar(int year) {
 		this.startYear = year;
 		this.endYear = year+1;
 		this.calendar = buildAcademicCalendar();
+		this.firstDay = SODDateUtils.toEpochDay(LocalDate.of(startYear, Month.JANUARY, 1));
+		this.days = compileDays();
+		this.open = compileOpenSessions();
 	}
 	
 	private AcademicCalendar(LocalDate start, LocalDate end) {
@@ -229,6 +246,30 @@ public enum AcademicCalendar {
 			throw new IllegalArgumentException("Start year ["+startYear+"] and end year ["+endYear+"] are different.");
 		}
 		this.calendar = buildAcademicCalendar();
+		this.firstDay = SODDateUtils.toEpochDay(LocalDate.of(startYear, Month.JANUARY, 1));
+		this.days = compileDays();
+		this.open = compileOpenSessions();
+	}
+
+	private ClinicStatus[] compileDays() {
+		ClinicStatus[] days = new ClinicStatus[SODDateUtils.toEpochDay(LocalDate.of(endYear, Month.DECEMBER, 31)) - firstDay + 1];
+		for(int day = 0; day < days.length; day++) {
+			days[day] = lookup(getDate(day));
+		}
+		return days;
+	}
+
+	private BitSet compileOpenSessions() {
+		BitSet open = new BitSet(days.length * SESSIONS_PER_DAY);
+		for(int day = 0; day < days.length; day++) {
+			OpenMode status = days[day].status;
+			int session = day * SESSIONS_PER_DAY;
+			open.set(session + D3_AM, status.d3_am);
+			open.set(session + D3_PM, status.d3_pm);
+			open.set(session + D4_AM, status.d4_am);
+			open.set(session + D4_PM, status.d4_pm);
+		}
+		return open;
 	}
 	
 	/**
@@ -241,6 +282,11 @@ public enum AcademicCalendar {
 	}
 	
 	public ClinicStatus get(LocalDate date) {
+		int day = indexOf(date);
+		return day >= 0 ? days[day] : lookup(date);
+	}
+
+	private ClinicStatus lookup(LocalDate date) {
 		switch(date.getDayOfWeek()) {
 		case SATURDAY:
 		case SUNDAY:
@@ -249,6 +295,79 @@ public enum AcademicCalendar {
 			return calendar.getOrDefault(date, ClinicStatus.TYPICAL);
 		}
 	}
+
+	/**
+	 * @return the index of the date, or -1 if the date is outside of the start and end years
+	 */
+	public int indexOf(LocalDate date) {
+		int day = SODDateUtils.toEpochDay(date) - firstDay;
+		return day < 0 || day >= days.length ? -1 : day;
+	}
+
+	/**
+	 * @return the index of the date, the last index for a date after the end year, or -1 for a date before the start year
+	 */
+	public int floorIndexOf(LocalDate date) {
+		return Math.min(SODDateUtils.toEpochDay(date) - firstDay, days.length - 1);
+	}
+
+	public LocalDate getDate(int index) {
+		return LocalDate.ofEpochDay(firstDay + index);
+	}
+
+	public int size() {
+		return days.length;
+	}
+
+	public ClinicStatus get(int index) {
+		return days[index];
+	}
+
+	/**
+	 * @return true, if the session of the period is open to D3s or D4s on the day of the index; an index outside
+	 * of the calendar, e.g. -1 from indexOf(), is closed
+	 */
+	public boolean isOpen(int index, Period period) {
+		return isOpen(index, period, false) || isOpen(index, period, true);
+	}
+
+	public boolean isOpen(int index, Period period, boolean d4) {
+		if(index < 0 || index >= days.length) {
+			return false;
+		}
+		return open.get(index * SESSIONS_PER_DAY + (d4 ? (period.isAM() ? D4_AM : D4_PM) : (period.isAM() ? D3_AM : D3_PM)));
+	}
+
+	/**
+	 * @return true, if any session is open on the day of the index; an index outside of the calendar is closed
+	 */
+	public boolean isClinicDay(int index) {
+		if(index < 0 || index >= days.length) {
+			return false;
+		}
+		int session = open.nextSetBit(index * SESSIONS_PER_DAY);
+		return session >= 0 && session < (index + 1) * SESSIONS_PER_DAY;
+	}
+
+	/**
+	 * Scans the open sessions for the next clinic day
+	 * @return the index of the first day on or after index with an open session, or -1 if there is none or the index is -1
+	 */
+	public int nextClinicDay(int index) {
+		if(index < 0) {
+			return -1;
+		}
+		int session = open.nextSetBit(index * SESSIONS_PER_DAY);
+		return session < 0 ? -1 : session / SESSIONS_PER_DAY;
+	}
+
+	/**
+	 * @return the index of the first day on or after the date with an open session, scanning from the start of the
+	 * calendar for an earlier date; -1 if there is none
+	 */
+	public int nextClinicDay(LocalDate date) {
+		return nextClinicDay(Math.max(SODDateUtils.toEpochDay(date) - firstDay, 0));
+	}
 	
 	public static LocalDate getClinicStartDate(Student s) {
 		AcademicCalendar calendar = AcademicCalendar.getCalendar(s.getGraduationYear()-2); // calendars are based on July of the given year
@@ -290,7 +409,17 @@ public enum AcademicCalendar {
 	
 	public static final List<Month> ACADEMIC_YEAR = Arrays.asList(Month.JULY, Month.AUGUST, Month.SEPTEMBER, Month.OCTOBER, Month.NOVEMBER, Month.DECEMBER, Month.JANUARY, Month.FEBRUARY, Month.MARCH, Month.APRIL, Month.MAY, Month.JUNE);
 
-	private static Map<Integer, AcademicCalendar> calendars = null;
+	// Initialized on first use by the class loader, which makes the map safe to read from any thread
+	private static class Calendars {
+		private static final Map<Integer, AcademicCalendar> BY_YEAR;
+		static {
+			Map<Integer, AcademicCalendar> calendars = new TreeMap<Integer, AcademicCalendar>();
+			for(AcademicCalendar c : AcademicCalendar.values()) {
+				calendars.put(c.startYear, c);
+			}
+			BY_YEAR = Collections.unmodifiableMap(calendars);
+		}
+	}
 
 	public static AcademicCalendar getCalendar() {
 		return getCalendar(LocalDate.now());
@@ -301,19 +430,7 @@ public enum AcademicCalendar {
 	}
 
 	public static AcademicCalendar getCalendar(int year) {
-	
-		if(calendars == null) {
-			calendars = new TreeMap<Integer, AcademicCalendar>();
-			return getCalendar(year);
-		} else if(calendars.isEmpty()) {
-			Map<Integer, AcademicCalendar> _calendars = new TreeMap<Integer, AcademicCalendar>();
-			for(AcademicCalendar c : AcademicCalendar.values()) {
-				_calendars.put(c.startYear, c);
-			}
-			calendars = _calendars;
-		}
-		
-		AcademicCalendar calendar = calendars.get(year);
+		AcademicCalendar calendar = Calendars.BY_YEAR.get(year);
 		if(calendar == null) {
 			throw new RuntimeException("Calendar not implemented for year " + year);
 		}
@@ -0,0 +1,138 @@
+package ucsf.sod.xo.calendar;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+import ucsf.sod.util.SODDateUtils;
+import ucsf.sod.xo.objects.GroupPractice;
+import ucsf.sod.xo.objects.Student.UpperLower;
+
+/**
+ * Maps each day of the weeks covered by an X-O grid to a dense index, with the lecture, huddle, break and
+ * priority attributes of the days precomputed into bitsets. Days outside of the covered weeks have none of them.
+ */
+public class AcademicDayIndex {
+
+	private final int firstDay; // epoch day of the Monday of the first week
+	private final int days;
+	private final BitSet d3Lecture = new BitSet();
+	private final BitSet d4Lecture = new BitSet();
+	private final BitSet huddle = new BitSet();
+	private final BitSet[] practiceHuddle = new BitSet[GroupPractice.values().length];
+	private final BitSet clinicBreak = new BitSet();
+	private final BitSet upper = new BitSet();
+	private final BitSet lower = new BitSet();
+
+	private AcademicDayIndex(LocalDate first, LocalDate last) {
+		firstDay = SODDateUtils.floorToLastMonday(SODDateUtils.toEpochDay(first));
+		days = SODDateUtils.weekIndex(SODDateUtils.toEpochDay(last), firstDay) * 7 + 7;
+		for(int i = 0; i < practiceHuddle.length; i++) {
+			practiceHuddle[i] = new BitSet();
+		}
+	}
+
+	/**
+	 * @param breakWeeks the Mondays of the weeks the clinic is closed
+	 * @param priority the priority of each week, keyed by its Monday
+	 * @param practiceHuddle whether a huddle date is the huddle of the practice
+	 * @return the index of the weeks from first to last
+	 */
+	public static AcademicDayIndex of(LocalDate first, LocalDate last, Set<LocalDate> d3Lecture, Set<LocalDate> d4Lecture, Set<LocalDate> huddles, Set<LocalDate> breakWeeks, Map<LocalDate, UpperLower> priority, BiPredicate<GroupPractice, LocalDate> practiceHuddle) {
+		AcademicDayIndex index = new AcademicDayIndex(first, last);
+		index.setAll(index.d3Lecture, d3Lecture);
+		index.setAll(index.d4Lecture, d4Lecture);
+		index.setAll(index.huddle, huddles);
+		for(LocalDate date : huddles) {
+			int day = index.indexOf(date);
+			if(day < 0) {
+				continue;
+			}
+
+			for(GroupPractice p : GroupPractice.values()) {
+				if(practiceHuddle.test(p, date)) {
+					index.practiceHuddle[p.ordinal()].set(day);
+				}
+			}
+		}
+
+		for(LocalDate monday : breakWeeks) {
+			index.setWeek(index.clinicBreak, monday);
+		}
+		for(Map.Entry<LocalDate, UpperLower> e : priority.entrySet()) {
+			if(e.getValue() == UpperLower.UPPER) {
+				index.setWeek(index.upper, e.getKey());
+			} else if(e.getValue() == UpperLower.LOWER) {
+				index.setWeek(index.lower, e.getKey());
+			}
+		}
+		return index;
+	}
+
+	private void setAll(BitSet bits, Set<LocalDate> dates) {
+		for(LocalDate date : dates) {
+			int day = indexOf(date);
+			if(day >= 0) {
+				bits.set(day);
+			}
+		}
+	}
+
+	private void setWeek(BitSet bits, LocalDate date) {
+		int day = SODDateUtils.floorToLastMonday(SODDateUtils.toEpochDay(date)) - firstDay;
+		if(day >= 0 && day < days) {
+			bits.set(day, day + 7);
+		}
+	}
+
+	/**
+	 * @return the index of the date, or -1 if the date is outside of the covered weeks
+	 */
+	public int indexOf(LocalDate date) {
+		int day = SODDateUtils.toEpochDay(date) - firstDay;
+		return day < 0 || day >= days ? -1 : day;
+	}
+
+	public LocalDate getDate(int index) {
+		return LocalDate.ofEpochDay(firstDay + index);
+	}
+
+	public int size() {
+		return days;
+	}
+
+	public boolean isD3Lecture(LocalDate date) {
+		return test(d3Lecture, date);
+	}
+
+	public boolean isD4Lecture(LocalDate date) {
+		return test(d4Lecture, date);
+	}
+
+	public boolean isHuddle(LocalDate date) {
+		return test(huddle, date);
+	}
+
+	public boolean isHuddle(GroupPractice practice, LocalDate date) {
+		return test(practiceHuddle[practice.ordinal()], date);
+	}
+
+	public boolean isClinicBreak(LocalDate date) {
+		return test(clinicBreak, date);
+	}
+
+	public UpperLower getPriority(LocalDate date) {
+		int day = indexOf(date);
+		if(day < 0) {
+			return UpperLower.UNKNOWN;
+		}
+		return upper.get(day) ? UpperLower.UPPER : lower.get(day) ? UpperLower.LOWER : UpperLower.UNKNOWN;
+	}
+
+	private boolean test(BitSet bits, LocalDate date) {
+		int day = indexOf(date);
+		return day >= 0 && bits.get(day);
+	}
+}
@@ -33,6 +33,11 @@ public enum GroupPractice {
 		pods.get(pod).add(s);
 	}
 	
+	void unregister(Student s, char pod) {
+		students.remove(s);
+		pods.get(pod).remove(s);
+	}
+	
 	public int studentCount() {
 		return students.size();
 	}
@@ -3,6 +3,8 @@ package ucsf.sod.xo.objects;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ucsf.sod.objects.GenericSession;
 import ucsf.sod.objects.Period;
@@ -28,6 +30,15 @@ public enum PerioSession implements Session {
 	public final DayOfWeek day;
 	public final Clinic clinic;
 	public final PerioPeriod period;
+
+	// Sessions by [day of week][period], and the perio period of the other periods resolved once each
+	private static final PerioSession[][] SESSIONS = new PerioSession[DayOfWeek.values().length][PerioPeriod.values().length];
+	private static final Map<Period, PerioPeriod> PERIODS = new ConcurrentHashMap<Period, PerioPeriod>();
+	static {
+		for(PerioSession s : values()) {
+			SESSIONS[s.day.ordinal()][s.period.ordinal()] = s;
+		}
+	}
 	
 	PerioSession(DayOfWeek d, Clinic c, PerioPeriod p) {
 		this.day = d;
@@ -60,13 +71,11 @@ public enum PerioSession implements Session {
 	}
 
 	public static PerioSession toSession(LocalDate date, Period p) {
-		if(!p.toString().startsWith("PERIO")) {
-			p = PerioPeriod.getPeriod(p.getStartTime(), p.getEndTime());
-		}
-		return PerioSession.valueOf("PERIO_" + date.getDayOfWeek() + "_" + p.getMeridian());
+		PerioPeriod period = p instanceof PerioPeriod ? (PerioPeriod)p : PERIODS.computeIfAbsent(p, _p -> PerioPeriod.getPeriod(_p.getStartTime(), _p.getEndTime()));
+		return SESSIONS[date.getDayOfWeek().ordinal()][period.ordinal()];
 	}
 
 	public static PerioSession toSession(LocalDate date, LocalTime start, LocalTime end) {
-		return PerioSession.valueOf("PERIO_" + date.getDayOfWeek() + "_" + PerioPeriod.getPeriod(start, end).getMeridian());
+		return SESSIONS[date.getDayOfWeek().ordinal()][PerioPeriod.getPeriod(start, end).ordinal()];
 	}
 }
@@ -3,80 +3,41 @@ package ucsf.sod.xo.objects;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ucsf.sod.objects.Period;
 import ucsf.sod.objects.Session;
 
 public enum PredocSession implements Session {
 	PREDOC_MONDAY_AM(DayOfWeek.MONDAY, Clinic.PREDOC, PredocPeriod.PREDOC_AM),
-	PREDOC_MONDAY_PM1(DayOfWeek.MONDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
-	PREDOC_MONDAY_PM2(DayOfWeek.MONDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
+	PREDOC_MONDAY_PM1(DayOfWeek.MONDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1),
+	PREDOC_MONDAY_PM2(DayOfWeek.MONDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2),
 	PREDOC_TUESDAY_AM(DayOfWeek.TUESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_AM),
-	PREDOC_TUESDAY_PM1(DayOfWeek.TUESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
-	PREDOC_TUESDAY_PM2(DayOfWeek.TUESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
+	PREDOC_TUESDAY_PM1(DayOfWeek.TUESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1),
+	PREDOC_TUESDAY_PM2(DayOfWeek.TUESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2),
 	PREDOC_WEDNESDAY_AM(DayOfWeek.WEDNESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_AM),
-	PREDOC_WEDNESDAY_PM1(DayOfWeek.WEDNESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
-	PREDOC_WEDNESDAY_PM2(DayOfWeek.WEDNESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
+	PREDOC_WEDNESDAY_PM1(DayOfWeek.WEDNESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1),
+	PREDOC_WEDNESDAY_PM2(DayOfWeek.WEDNESDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2),
 	PREDOC_THURSDAY_AM(DayOfWeek.THURSDAY, Clinic.PREDOC, PredocPeriod.PREDOC_AM),
-	PREDOC_THURSDAY_PM1(DayOfWeek.THURSDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
-	PREDOC_THURSDAY_PM2(DayOfWeek.THURSDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
+	PREDOC_THURSDAY_PM1(DayOfWeek.THURSDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1),
+	PREDOC_THURSDAY_PM2(DayOfWeek.THURSDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2),
 	PREDOC_FRIDAY_AM(DayOfWeek.FRIDAY, Clinic.PREDOC, PredocPeriod.PREDOC_AM),
-	PREDOC_FRIDAY_PM1(DayOfWeek.FRIDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	},
-	PREDOC_FRIDAY_PM2(DayOfWeek.FRIDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2) {
-		@Override
-		public boolean isPM() {
-			return this.toString().contains("PM");
-		}
-	};
+	PREDOC_FRIDAY_PM1(DayOfWeek.FRIDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM1),
+	PREDOC_FRIDAY_PM2(DayOfWeek.FRIDAY, Clinic.PREDOC, PredocPeriod.PREDOC_PM2);
 
 	public final DayOfWeek day;
 	public final Clinic clinic;
 	public final Period period;
+
+	// Sessions by [day of week][period], null on the weekend, and the predoc period of each period resolved once
+	private static final PredocSession[][] SESSIONS = new PredocSession[DayOfWeek.values().length][PredocPeriod.values().length];
+	private static final Map<Period, PredocPeriod> PERIODS = new ConcurrentHashMap<Period, PredocPeriod>();
+	static {
+		for(PredocSession s : values()) {
+			SESSIONS[s.day.ordinal()][((PredocPeriod)s.period).ordinal()] = s;
+		}
+	}
 	
 	PredocSession(DayOfWeek d, Clinic c, Period p) {
 		this.day = d;
@@ -104,19 +65,27 @@ public enum PredocSession implements Session {
 	}
 	
 	public boolean isPM1() {
-		return toString().endsWith("PM1");
+		return period == PredocPeriod.PREDOC_PM1;
 	}
 	
 	public boolean isPM2() {
-		return toString().endsWith("PM2");
+		return period == PredocPeriod.PREDOC_PM2;
 	}
 
 	public static PredocSession toSession(LocalDate d, Period p) {
-		return toSession(d, p.getStartTime(), p.getEndTime());
+		return toSession(d, PERIODS.computeIfAbsent(p, _p -> PredocPeriod.getPeriod(_p.getStartTime(), _p.getEndTime())));
 	}
 	
 	public static PredocSession toSession(LocalDate date, LocalTime start, LocalTime end) {
-		return PredocSession.valueOf("PREDOC_" + date.getDayOfWeek() + "_" + PredocPeriod.getPeriod(start, end).getMeridian());
+		return toSession(date, PredocPeriod.getPeriod(start, end));
+	}
+
+	private static PredocSession toSession(LocalDate date, PredocPeriod p) {
+		PredocSession s = SESSIONS[date.getDayOfWeek().ordinal()][p.ordinal()];
+		if(s == null) {
+			throw new IllegalArgumentException("No predoc session on " + date.getDayOfWeek() + " " + p);
+		}
+		return s;
 	}
 	
 	public static boolean isPredocSession(Session s) {
@@ -67,6 +67,7 @@ public enum Rotation {
 	
 	protected final Map<LocalDate, Set<Student>> rotationSchedule = new HashMap<LocalDate, Set<Student>>();
 	private final Set<Student> students = new HashSet<Student>();
+	private final RotationIndex byPractice = new RotationIndex(); // rotationSchedule partitioned by practice
 	public final RotationLength length;
 	public final String label;
 	Rotation(String label, RotationLength length) {
@@ -85,6 +86,26 @@ public enum Rotation {
 		}
 		l.add(s);
 		students.add(s);
+		byPractice.add(date, s);
+	}
+	
+	/**
+	 * Removes the student from the rotation on the date, and from the rotation entirely if it was their only date
+	 */
+	public void unregisterStudent(Student s, LocalDate date) {
+		if(length == RotationLength.WEEK_LONG && date.getDayOfWeek() != DayOfWeek.MONDAY) {
+			date = SODDateUtils.floorToLastMonday(date);
+		}
+		
+		Set<Student> l = rotationSchedule.get(date);
+		if(l == null || !l.remove(s)) {
+			throw new RuntimeException(s.id + " is not registered for " + this + " on " + date);
+		}
+		byPractice.remove(date, List.of(s));
+		
+		if(rotationSchedule.values().stream().noneMatch(_l -> _l.contains(s))) {
+			students.remove(s);
+		}
 	}
 	
 	public Set<Student> getStudents(LocalDate date) {
@@ -119,20 +140,18 @@ public enum Rotation {
 			throw new RuntimeException("Student needs to be removed but was not");
 		}
 		students.removeAll(s);
+		byPractice.remove(date, s);
 	}
 	
 	public Set<Student> getStudentsByPractice(GroupPractice p, LocalDate date) {
 		if(date.getDayOfWeek() != DayOfWeek.MONDAY) {
 			date = SODDateUtils.floorToLastMonday(date);
 		}
-		return getStudentsByPractice(p).getOrDefault(date, Set.of());
+		return byPractice.get(p, date);
 	}
 	
 	public Map<LocalDate, Set<Student>> getStudentsByPractice(GroupPractice p) {
-		return rotationSchedule.entrySet().stream()
-			.map(e -> Map.entry(e.getKey(), e.getValue().stream().filter(s -> s.practice == p).collect(Collectors.toSet())))
-			.filter(e -> e.getValue().size() != 0)
-			.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+		return byPractice.get(p);
 	}
 	
 	// TODO: make the lists inside the map unmodifiable
@@ -140,9 +159,16 @@ public enum Rotation {
 		return Collections.unmodifiableMap(rotationSchedule);
 	}
 	
+	/**
+	 * Classifies a grid entry through the interned RotationLabel table; unrecognized entries are
+	 * reported in aggregate by RotationLabel.reportUnrecognized()
+	 */
 	public static Rotation toRotation(String entry) {
+		return RotationLabel.of(entry).rotation;
+	}
+	
+	static Rotation classify(String entry) {
 		if(entry == null || entry.length() == 0) {
-			System.err.println("Argument is null or empty: " + entry);
 			return UNKNOWN;
 		}
 		
@@ -167,7 +193,6 @@ public enum Rotation {
 			}
 		}
 		
-		System.err.println("Argument is unrecognized: " + entry);
 		return UNKNOWN;
 	}
 	
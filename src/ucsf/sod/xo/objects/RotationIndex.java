@@ -0,0 +1,79 @@
+package ucsf.sod.xo.objects;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Students of a rotation partitioned by date and practice. Each date holds one set per practice, modified in place
+ * as students are added or removed, and the unmodifiable view of it made with the set, so lookups hand out the stored view.
+ */
+class RotationIndex {
+
+	private static final GroupPractice[] PRACTICES = GroupPractice.values();
+
+	private final Map<LocalDate, Practices> index = new HashMap<LocalDate, Practices>();
+
+	void add(LocalDate date, Student s) {
+		if(s.practice == null) {
+			return;
+		}
+
+		index.computeIfAbsent(date, d -> new Practices()).students.get(s.practice.ordinal()).add(s);
+	}
+
+	void remove(LocalDate date, Collection<Student> students) {
+		Practices practices = index.get(date);
+		if(practices == null) {
+			return;
+		}
+
+		for(Student s : students) {
+			if(s.practice != null) {
+				practices.students.get(s.practice.ordinal()).remove(s);
+			}
+		}
+	}
+
+	/**
+	 * @return the students of the practice on the date, or an empty set
+	 */
+	Set<Student> get(GroupPractice p, LocalDate date) {
+		Practices practices = index.get(date);
+		return practices == null ? Set.of() : practices.views.get(p.ordinal());
+	}
+
+	/**
+	 * @return the dates the practice has students, with those students
+	 */
+	Map<LocalDate, Set<Student>> get(GroupPractice p) {
+		Map<LocalDate, Set<Student>> m = new HashMap<LocalDate, Set<Student>>();
+		for(Map.Entry<LocalDate, Practices> e : index.entrySet()) {
+			Set<Student> s = e.getValue().views.get(p.ordinal());
+			if(!s.isEmpty()) {
+				m.put(e.getKey(), s);
+			}
+		}
+		return m;
+	}
+
+	private static class Practices {
+
+		private final List<Set<Student>> students = new ArrayList<Set<Student>>(PRACTICES.length);
+		private final List<Set<Student>> views = new ArrayList<Set<Student>>(PRACTICES.length);
+
+		private Practices() {
+			for(int i = 0; i < PRACTICES.length; i++) {
+				Set<Student> s = new HashSet<Student>();
+				students.add(s);
+				views.add(Collections.unmodifiableSet(s));
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package ucsf.sod.xo.objects;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import ucsf.sod.xo.XOGridUtils;
+import ucsf.sod.xo.objects.Student.UpperLower;
+
+/**
+ * Interned classification of an X-O grid cell. Each distinct cell text is classified once,
+ * after which classification is a single hash lookup.
+ */
+public final class RotationLabel {
+
+	private static final Map<String, RotationLabel> labels = new ConcurrentHashMap<String, RotationLabel>();
+	private static final Set<String> unrecognized = new ConcurrentSkipListSet<String>(); // non-blank texts interned as UNKNOWN, until reported
+
+	public final String text;
+	public final Rotation rotation;
+
+	/**
+	 * UPPER or LOWER if the rotation only applies to the student in that row, NEITHER otherwise
+	 */
+	public final UpperLower only;
+
+	private RotationLabel(String text) {
+		this.text = text;
+		this.rotation = Rotation.classify(text);
+		if(XOGridUtils.ROTATION_UPPER_ONLY.matcher(text).matches()) {
+			only = UpperLower.UPPER;
+		} else if(XOGridUtils.ROTATION_LOWER_ONLY.matcher(text).matches()) {
+			only = UpperLower.LOWER;
+		} else {
+			only = UpperLower.NEITHER;
+		}
+
+		if(rotation == Rotation.UNKNOWN && !text.isBlank()) {
+			unrecognized.add(text);
+		}
+	}
+
+	public static RotationLabel of(String text) {
+		if(text == null) {
+			text = "";
+		}
+
+		RotationLabel label = labels.get(text);
+		if(label == null) {
+			label = labels.computeIfAbsent(text, RotationLabel::new);
+		}
+		return label;
+	}
+
+	/**
+	 * @param upperRow whether the student is in the upper row of the pair
+	 * @return the rotation for that student, which is CLINIC if the rotation only applies to the other row
+	 */
+	public Rotation resolve(boolean upperRow) {
+		if(only == UpperLower.UPPER && !upperRow) {
+			return Rotation.CLINIC;
+		} else if(only == UpperLower.LOWER && upperRow) {
+			return Rotation.CLINIC;
+		}
+		return rotation;
+	}
+
+	/**
+	 * Prints each unrecognized label first seen since the last report; empty cells are not reported
+	 */
+	public static void reportUnrecognized() {
+		if(unrecognized.isEmpty()) {
+			return;
+		}
+
+		System.err.println("Unrecognized rotation labels:");
+		for(String text : unrecognized) {
+			System.err.println(text);
+			unrecognized.remove(text);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
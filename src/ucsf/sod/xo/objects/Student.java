@@ -394,27 +394,58 @@ public class Student implements Comparable<Student> {
 		return s;
 	}
 	
+	/**
+	 * Removes a student from the students and their practice, such as one restored from a snapshot that failed
+	 */
+	public static void discard(Student s) {
+		synchronized(students) {
+			students.remove(s.id, s);
+		}
+		if(s.practice != null) {
+			s.practice.unregister(s, s.pod);
+		}
+	}
+	
 	public static Student getStudent(String id) {
 		
 		if(id == null || id.length() == 0) {
 			return null;
-		} else if("S2396".equals(id)) {
+		}
+		
+		Student s = getReservedStudent(id);
+		return s != null ? s : students.get(toCanonicalId(id));
+	}
+	
+	/**
+	 * @return PLACEHOLDER, ER, or NPE if the id stands for one of them, otherwise null
+	 */
+	public static Student getReservedStudent(String id) {
+		id = toUpperCase(id);
+		if("S2396".equals(id)) {
 			return PLACEHOLDER;
 		} else if("D099".equals(id)) {
 			return ER;
 		} else if("D106".equals(id) || "D104".equals(id)) {
 			return NPE;
-		} else if(Character.isLowerCase(id.charAt(0))) {
-			return getStudent(id.toUpperCase());
 		}
-
+		return null;
+	}
+	
+	/**
+	 * @return the id the student is created under, resolving the ids known to be aliases
+	 */
+	public static String toCanonicalId(String id) {
+		id = toUpperCase(id);
 		if("S2176".equals(id)) {
-			id = "S2291";
+			return "S2291";
 		} else if("I2321".equals(id) && AcademicCalendar.CURRENT_YEAR == AcademicCalendar.AY2021_2022) {
-			id = "I2309";
+			return "I2309";
 		}
-		
-		return students.get(id);
+		return id;
+	}
+	
+	private static String toUpperCase(String id) {
+		return Character.isLowerCase(id.charAt(0)) ? id.toUpperCase() : id;
 	}
 	
 	@Deprecated
@@ -0,0 +1,170 @@
+package ucsf.sod.xo.scheduler;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Depth-first search for the most keys assigned to distinct values, over an explicit stack so that its depth is not
+ * bound by the thread's. Each key in turn takes one of its candidates or is skipped; the first descent takes the first
+ * candidate of every key, as a greedy pass would. A subtree that could not beat the best assignment found is
+ * remembered by the key it starts at and the values left, and is not searched again.
+ */
+class Backtracking {
+
+	static final int FREE = BipartiteMatching.FREE;
+	static final long DEFAULT_NODES = 100_000;
+
+	/**
+	 * Candidates of a key among the values left, by index, most preferred first
+	 */
+	@FunctionalInterface
+	static interface Candidates {
+		public int[] of(int key, BitSet remaining);
+	}
+
+	private final int keys;
+	private final Candidates candidates;
+	private final int target;
+
+	private final BitSet remaining;
+	private final int[] keyMatch;
+	private int[] best;
+	private int bestSize = 0;
+	private boolean improved = false; // the current assignment is the best, not yet copied to it
+	private final Map<Integer, Set<BitSet>> failed = new HashMap<Integer, Set<BitSet>>();
+
+	// Frames of the stack, by depth
+	private final int[] frameKey;
+	private final int[][] frameCandidates;
+	private final int[] frameNext; // candidate taken; its length when the key is skipped
+	private final int[] frameBest; // best size when the frame was pushed
+	private int depth = 0;
+	private int assigned = 0;
+
+	private Backtracking(int keys, int values, Candidates candidates) {
+		this.keys = keys;
+		this.candidates = candidates;
+		this.target = Math.min(keys, values);
+		this.remaining = new BitSet(values);
+		this.remaining.set(0, values);
+		this.keyMatch = new int[keys];
+		Arrays.fill(keyMatch, FREE);
+		this.best = keyMatch.clone();
+		this.frameKey = new int[keys];
+		this.frameCandidates = new int[keys][];
+		this.frameNext = new int[keys];
+		this.frameBest = new int[keys];
+	}
+
+	/**
+	 * @param keys number of keys, tried in index order
+	 * @param values number of values
+	 * @param nodes number of keys to try a candidate for before settling for the best assignment found
+	 * @return the value of each key in the best assignment found, or FREE
+	 */
+	static int[] search(int keys, int values, Candidates candidates, long nodes) {
+		Backtracking b = new Backtracking(keys, values, candidates);
+		b.run(nodes);
+		b.keep();
+		return b.best;
+	}
+
+	private void run(long nodes) {
+		int position = 0;
+		while(true) {
+			// Descend from the position, taking the first candidate of each key
+			while(assigned < target && position < keys && !remaining.isEmpty()) {
+				if(assigned + Math.min(remaining.cardinality(), keys - position) <= bestSize) {
+					break;
+				}
+
+				int[] c = candidates.of(position, remaining);
+				if(c.length == 0) {
+					position++;
+					continue;
+				}
+
+				Set<BitSet> _failed = failed.get(position);
+				if(_failed != null && _failed.contains(remaining)) {
+					break;
+				}
+
+				if(nodes-- == 0) {
+					return;
+				}
+
+				frameKey[depth] = position;
+				frameCandidates[depth] = c;
+				frameNext[depth] = 0;
+				frameBest[depth] = bestSize;
+				depth++;
+				take(position, c[0]);
+				position++;
+			}
+
+			if(assigned == target) {
+				return;
+			}
+
+			// Backtrack to the deepest frame with an alternative left
+			keep();
+			while(true) {
+				if(depth == 0) {
+					return;
+				}
+
+				int d = depth - 1;
+				int k = frameKey[d];
+				int[] c = frameCandidates[d];
+				if(frameNext[d] < c.length) {
+					release(k, c[frameNext[d]]);
+				}
+
+				frameNext[d]++;
+				if(frameNext[d] < c.length) {
+					take(k, c[frameNext[d]]);
+					break;
+				} else if(frameNext[d] == c.length) {
+					break; // skip the key
+				} else {
+					if(bestSize == frameBest[d]) {
+						failed.computeIfAbsent(k, _k -> new HashSet<BitSet>()).add((BitSet)remaining.clone());
+					}
+					frameCandidates[d] = null;
+					depth--;
+				}
+			}
+			position = frameKey[depth - 1] + 1;
+		}
+	}
+
+	private void take(int key, int value) {
+		keyMatch[key] = value;
+		remaining.clear(value);
+		if(++assigned > bestSize) {
+			bestSize = assigned;
+			improved = true;
+		}
+	}
+
+	/**
+	 * Copies the current assignment to the best one if it is; takes only ever extend an improvement, so this is
+	 * only needed before a release
+	 */
+	private void keep() {
+		if(improved) {
+			best = keyMatch.clone();
+			improved = false;
+		}
+	}
+
+	private void release(int key, int value) {
+		keyMatch[key] = FREE;
+		remaining.set(value);
+		assigned--;
+	}
+}
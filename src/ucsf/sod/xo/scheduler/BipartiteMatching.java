@@ -0,0 +1,94 @@
+package ucsf.sod.xo.scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Hopcroft-Karp maximum matching between keys and values, given the values each key can take by index.
+ * Augmenting paths only ever extend a matching, so every key and value matched on entry stays matched.
+ */
+class BipartiteMatching {
+
+	static final int FREE = -1;
+	private static final int INFINITY = Integer.MAX_VALUE;
+
+	private final int[][] adjacency;
+	private final int[] keyMatch;
+	private final int[] valueMatch;
+	private final int[] layer;
+	private final int[] next; // next edge of each key to try in the current phase
+
+	private BipartiteMatching(int[][] adjacency, int[] keyMatch, int[] valueMatch) {
+		this.adjacency = adjacency;
+		this.keyMatch = keyMatch;
+		this.valueMatch = valueMatch;
+		this.layer = new int[keyMatch.length];
+		this.next = new int[keyMatch.length];
+	}
+
+	/**
+	 * Extends the matching to a maximum one; edges are tried in the order given
+	 * @param adjacency values of each key
+	 * @param keyMatch value of each key, or FREE; updated in place
+	 * @param valueMatch key of each value, or FREE; updated in place
+	 * @return the number of matched keys
+	 */
+	static int augment(int[][] adjacency, int[] keyMatch, int[] valueMatch) {
+		BipartiteMatching m = new BipartiteMatching(adjacency, keyMatch, valueMatch);
+		int size = (int)Arrays.stream(keyMatch).filter(v -> v != FREE).count();
+		while(m.layer()) {
+			Arrays.fill(m.next, 0);
+			for(int k = 0; k < keyMatch.length; k++) {
+				if(keyMatch[k] == FREE && m.extend(k)) {
+					size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Layers the keys by their distance from the free keys along alternating paths
+	 * @return whether a free value can be reached
+	 */
+	private boolean layer() {
+		int[] queue = new int[keyMatch.length];
+		int head = 0, tail = 0;
+		for(int k = 0; k < keyMatch.length; k++) {
+			if(keyMatch[k] == FREE) {
+				layer[k] = 0;
+				queue[tail++] = k;
+			} else {
+				layer[k] = INFINITY;
+			}
+		}
+
+		boolean found = false;
+		while(head < tail) {
+			int k = queue[head++];
+			for(int v : adjacency[k]) {
+				int matched = valueMatch[v];
+				if(matched == FREE) {
+					found = true;
+				} else if(layer[matched] == INFINITY) {
+					layer[matched] = layer[k] + 1;
+					queue[tail++] = matched;
+				}
+			}
+		}
+		return found;
+	}
+
+	private boolean extend(int k) {
+		for(; next[k] < adjacency[k].length; next[k]++) {
+			int v = adjacency[k][next[k]];
+			int matched = valueMatch[v];
+			if(matched == FREE || (layer[matched] == layer[k] + 1 && extend(matched))) {
+				keyMatch[k] = v;
+				valueMatch[v] = k;
+				return true;
+			}
+		}
+		layer[k] = INFINITY;
+		return false;
+	}
+}
@@ -2,10 +2,8 @@ package ucsf.sod.xo.scheduler;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.random.RandomGenerator;
 
 import ucsf.sod.xo.XOGridUtils;
 
@@ -13,183 +11,251 @@ public class CapacityScenario {
 
 	public final int maxCapacity;
 	private final List<Pairing> pairs;
-	private final Map<PairingType, Integer> pairings;
-	
-	private CapacityScenario(int maxCapacity, List<Pairing> pairs) {
-		this(
-			maxCapacity, 
-			pairs,
-			pairs.stream().collect(Collectors.groupingBy(
-				p -> p.type, 
-				() -> new TreeMap<PairingType, Integer>(), 
-				Collectors.collectingAndThen(Collectors.counting(), l -> l.intValue())
-			))
-		);
-	}
-
-	private CapacityScenario(int maxCapacity, List<Pairing> pairs, Map<PairingType, Integer> pairings) {
+	private final int[] pairings; // count of each PairingType, by ordinal
+	private final RandomGenerator random; // stream of the session, shared by the scenarios split from it
+
+	private CapacityScenario(int maxCapacity, List<Pairing> pairs, RandomGenerator random, int[] pairings) {
 		this.maxCapacity = maxCapacity;
 		this.pairs = List.copyOf(pairs);
 		this.pairings = pairings;
+		this.random = random;
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @return a new list containing the pairs
 	 */
 	public List<Pairing> getPairs() {
 		return new ArrayList<Pairing>(pairs);
 	}
-	
+
 	public int getChairsOccupied() {
 		return pairs.size();
 	}
-	
+
 	public int getAssistantCount() {
-		return getChairsOccupied() - pairings.getOrDefault(PairingType.SEPARATED, 0) - pairings.getOrDefault(PairingType.ORPHAN, 0);
+		return getChairsOccupied() - pairings[PairingType.SEPARATED.ordinal()] - pairings[PairingType.ORPHAN.ordinal()];
 	}
-	
+
 	public boolean hasSplittablePairs() {
-		boolean canSplit = true;
-		
-		int secondary4 = pairings.getOrDefault(PairingType.SECONDARY_4, 0);
-		int secondary3 = pairings.getOrDefault(PairingType.SECONDARY_3, 0);
-		int total = secondary4 + secondary3;
-		if(total > 0) {
-			canSplit = canSplit(1);
-		}
-		return total != 0 && canSplit;
+		return pairings[PairingType.SECONDARY_4.ordinal()] + pairings[PairingType.SECONDARY_3.ordinal()] != 0 && canSplit(1);
 	}
-	
+
 	public List<Pairing> getSplittablePairs() {
-		return pairs.stream().filter(p -> p.type == PairingType.SECONDARY_4 || p.type == PairingType.SECONDARY_3).collect(Collectors.toList());
-	} 
-	
-	private List<Pairing> getSplittableLinks() {
-		return pairs.stream().filter(p -> p.type == PairingType.PRIMARY).collect(Collectors.toList());
+		List<Pairing> l = new ArrayList<Pairing>();
+		for(Pairing p : pairs) {
+			if(p.type == PairingType.SECONDARY_4 || p.type == PairingType.SECONDARY_3) {
+				l.add(p);
+			}
+		}
+		return l;
 	}
-	
+
 	public double getPercentHasAssistants() {
 		return getAssistantCount() / (double)getChairsOccupied();
 	}
-	
+
 	public boolean canSplit(int amountToSplit) {
-		return (getAssistantCount() - amountToSplit) / (double)(getChairsOccupied() + amountToSplit) >= 0.375;
+		return amountToSplit <= getMaxSplit();
 	}
-	
+
+	/**
+	 * @return the most pairs that can be split keeping at least 3 of 8 chairs with an assistant
+	 */
+	public int getMaxSplit() {
+		return maxSplit(getAssistantCount(), getChairsOccupied());
+	}
+
 	public boolean atCapacity() {
 		return maxCapacity == getChairsOccupied();
 	}
-	
-	public CapacityScenario splitHalf() {
 
-		if(!hasSplittablePairs()) {
-			return this;
-		}
-		
-		int oldSplitCount = getSplittablePairs().size();
-		int newSplitCount = oldSplitCount >> 1;
-		int newChairCount = oldSplitCount - newSplitCount;
-		
-		if(newChairCount == 0) {
-			throw new RuntimeException("Unable to split");
-		} else {
-			return splitPairs(newChairCount);
-		}
+	public CapacityScenario splitHalf() {
+		return toBuilder().splitHalf().build();
 	}
-	
+
 	public CapacityScenario splitPairs(int numberToSplit) {
-		return splitPairs(numberToSplit, false);
+		return toBuilder().splitPairs(numberToSplit).build();
 	}
-	
+
 	public CapacityScenario splitPairs(int numberToSplit, boolean force) {
-		
-		if(numberToSplit <= 0) {
-			System.err.println("This should be called with at least 1 pair to split: " + numberToSplit);
-			return this;
+		return toBuilder().splitPairs(numberToSplit, force).build();
+	}
+
+	public CapacityScenario splitLinksToCapacity() {
+		return toBuilder().splitLinksToCapacity().build();
+	}
+
+	public CapacityScenario splitLinks(int numberToSplit) {
+		return toBuilder().splitLinks(numberToSplit).build();
+	}
+
+	public CapacityScenario exceedCapacity(int targetCapacity) {
+		return toBuilder().exceedCapacity(targetCapacity).build();
+	}
+
+	public Builder toBuilder() {
+		return new Builder(maxCapacity, pairs, random);
+	}
+
+	/**
+	 * (A - k) / (C + k) >= 3/8 for A chairs with an assistant out of C, solved for k
+	 */
+	private static int maxSplit(int assistants, int chairsOccupied) {
+		return Math.floorDiv(8 * assistants - 3 * chairsOccupied, 11);
+	}
+
+	/**
+	 * Splits the pairs of a session in place, keeping the slots of the pairs that can still be split by kind and the count
+	 * of each PairingType, so that a split costs the pairs it touches rather than a copy of the session. A split pair
+	 * leaves its slot empty and its halves are added after the pairs, as splitting a copy of the list would.
+	 */
+	public static class Builder {
+
+		public final int maxCapacity;
+		private final RandomGenerator random;
+		private final List<Pairing> pairs; // null where a pair was split
+		private final List<Pairing> halves = new ArrayList<Pairing>();
+		private final int[] pairings = new int[PairingType.values().length];
+		private final List<Integer> secondary = new ArrayList<Integer>(); // slots of SECONDARY_4 and SECONDARY_3, in order
+		private final List<Integer> primary = new ArrayList<Integer>(); // slots of PRIMARY, in order
+		private int chairsOccupied;
+
+		private Builder(int maxCapacity, List<Pairing> pairs, RandomGenerator random) {
+			this.maxCapacity = maxCapacity;
+			this.random = random;
+			this.pairs = new ArrayList<Pairing>(pairs);
+			this.chairsOccupied = pairs.size();
+			for(int i = 0; i < pairs.size(); i++) {
+				PairingType type = pairs.get(i).type;
+				pairings[type.ordinal()]++;
+				if(type == PairingType.SECONDARY_4 || type == PairingType.SECONDARY_3) {
+					secondary.add(i);
+				} else if(type == PairingType.PRIMARY) {
+					primary.add(i);
+				}
+			}
 		}
-		
-		int chairsOccupied = getChairsOccupied();
-		if(!force && (chairsOccupied + numberToSplit) > maxCapacity) {
-			int chairsToFill = maxCapacity - chairsOccupied;
-			System.err.println("Proposed split [" + numberToSplit + "], Actual need ["+chairsToFill+"]");
-			numberToSplit = chairsToFill;
+
+		public int getChairsOccupied() {
+			return chairsOccupied;
 		}
 
-		List<Pairing> splittablePairs = getSplittablePairs();
-		if(force && splittablePairs.size() < numberToSplit) {
-			numberToSplit = splittablePairs.size();
-		} else if(!canSplit(numberToSplit)) {
-			return splitPairs(numberToSplit-1);
+		public int getAssistantCount() {
+			return chairsOccupied - pairings[PairingType.SEPARATED.ordinal()] - pairings[PairingType.ORPHAN.ordinal()];
 		}
-		
-		XOGridUtils.shuffle(splittablePairs);
-		return split(List.copyOf(splittablePairs.subList(0, numberToSplit)));
-	}
-	
-	public CapacityScenario splitLinksToCapacity() {
-		int need = maxCapacity - getChairsOccupied();
-		int ask = need;
-		while(ask > 0 && !canSplit(ask)) {
-			ask--;
-		}
-		
-		if(ask == 0) {
-			System.err.println("Cannot split below threshold of 3:8 ratio");
-			return this;
-		} else if(ask != need) {
-			System.err.println("Needed to split "+need+", able to split " + ask);
+
+		public int getMaxSplit() {
+			return maxSplit(getAssistantCount(), chairsOccupied);
 		}
-		
-		return splitLinks(ask);
-	}
-	
-	public CapacityScenario splitLinks(int numberToSplit) {
-		List<Pairing> splittablePairs = getSplittableLinks();
-		if(splittablePairs.size() > 0) {
-			XOGridUtils.shuffle(splittablePairs);
-			return split(List.copyOf(splittablePairs.subList(0, numberToSplit)));
-		} else {
-			return this;
+
+		public boolean canSplit(int amountToSplit) {
+			return amountToSplit <= getMaxSplit();
 		}
-	}
-	
-	private CapacityScenario split(List<Pairing> pairsToSplit) {
-		List<Pairing> postSplit = new ArrayList<Pairing>(pairs);
-		for(Pairing p : pairsToSplit) {
-			if(!postSplit.remove(p)) {
-				throw new RuntimeException("Unable to remove from list: " + p);
+
+		public boolean hasSplittablePairs() {
+			return !secondary.isEmpty() && canSplit(1);
+		}
+
+		public Builder splitHalf() {
+			if(!hasSplittablePairs()) {
+				return this;
 			}
-			
-			postSplit.addAll(p.split());
+
+			int oldSplitCount = secondary.size();
+			int newSplitCount = oldSplitCount >> 1;
+			return splitPairs(oldSplitCount - newSplitCount);
 		}
-		return new CapacityScenario(maxCapacity, postSplit);
-	}
-	
-	public CapacityScenario exceedCapacity(int targetCapacity) {
-		if(targetCapacity < 0) {
-			throw new IllegalArgumentException("Given target capacity is less than 0: " + targetCapacity);
-		}
-		
-		int need = targetCapacity - getChairsOccupied();
-		while(need > 0 && !canSplit(need)) {
-			need--;
-		}
-		
-		if(need > 0) {
-			CapacityScenario newScenario;
-			if(hasSplittablePairs()) {
-				newScenario = splitPairs(need, true);
+
+		public Builder splitPairs(int numberToSplit) {
+			return splitPairs(numberToSplit, false);
+		}
+
+		/**
+		 * @param force split up to the number of splittable pairs whatever the capacity, unless the ratio does not allow the number asked
+		 */
+		public Builder splitPairs(int numberToSplit, boolean force) {
+
+			if(numberToSplit <= 0) {
+				System.err.println("This should be called with at least 1 pair to split: " + numberToSplit);
+				return this;
+			}
+
+			if(!force && (chairsOccupied + numberToSplit) > maxCapacity) {
+				int chairsToFill = maxCapacity - chairsOccupied;
+				System.err.println("Proposed split [" + numberToSplit + "], Actual need ["+chairsToFill+"]");
+				numberToSplit = chairsToFill;
+			}
+
+			if(force && secondary.size() < numberToSplit) {
+				numberToSplit = secondary.size();
+			} else if(!canSplit(numberToSplit)) {
+				return splitPairs(Math.min(numberToSplit - 1, getMaxSplit())); // the largest number the ratio allows
+			}
+
+			return split(secondary, numberToSplit);
+		}
+
+		public Builder splitLinksToCapacity() {
+			int need = maxCapacity - chairsOccupied;
+			int ask = Math.max(0, Math.min(need, getMaxSplit()));
+
+			if(ask == 0) {
+				System.err.println("Cannot split below threshold of 3:8 ratio");
+				return this;
+			} else if(ask != need) {
+				System.err.println("Needed to split "+need+", able to split " + ask);
+			}
+
+			return splitLinks(ask);
+		}
+
+		public Builder splitLinks(int numberToSplit) {
+			return primary.isEmpty() ? this : split(primary, numberToSplit);
+		}
+
+		public Builder exceedCapacity(int targetCapacity) {
+			if(targetCapacity < 0) {
+				throw new IllegalArgumentException("Given target capacity is less than 0: " + targetCapacity);
+			}
+
+			int need = Math.min(targetCapacity - chairsOccupied, getMaxSplit());
+			if(need > 0) {
+				return hasSplittablePairs() ? splitPairs(need, true) : splitLinks(need);
 			} else {
-				newScenario = splitLinks(need);
+				return this;
 			}
+		}
 
-			return newScenario;
-		} else {
+		/**
+		 * Splits the given number of pairs, drawn by shuffling the slots as they stand
+		 */
+		private Builder split(List<Integer> slots, int numberToSplit) {
+			List<Integer> drawn = new ArrayList<Integer>(slots);
+			XOGridUtils.shuffle(drawn, random);
+			for(int slot : drawn.subList(0, numberToSplit)) {
+				Pairing p = pairs.set(slot, null);
+				halves.addAll(p.split());
+				pairings[p.type.ordinal()]--;
+				pairings[PairingType.SEPARATED.ordinal()] += 2;
+				chairsOccupied++;
+			}
+			slots.removeIf(slot -> pairs.get(slot) == null);
 			return this;
 		}
+
+		public CapacityScenario build() {
+			List<Pairing> l = new ArrayList<Pairing>(chairsOccupied);
+			for(Pairing p : pairs) {
+				if(p != null) {
+					l.add(p);
+				}
+			}
+			l.addAll(halves);
+			return new CapacityScenario(maxCapacity, l, random, pairings.clone());
+		}
 	}
-	
+
 	public static enum ScenarioMode {
 		CLINIC_BREAK,
 		REDUCED_CAPCITY,
@@ -197,9 +263,17 @@ public class CapacityScenario {
 		MAXIMIZE,
 		SUFFICIENT;
 	}
-	
-	public static CapacityScenario of(int chairCapacity, List<Pairing> pairs, Function<CapacityScenario, ScenarioMode> scenarioSupplier) {
-		CapacityScenario scenario = new CapacityScenario(chairCapacity, pairs);
+
+	public static Builder builder(int chairCapacity, List<Pairing> pairs, RandomGenerator random) {
+		return new Builder(chairCapacity, pairs, random);
+	}
+
+	/**
+	 * @param random stream the pairs to split are drawn from
+	 */
+	public static CapacityScenario of(int chairCapacity, List<Pairing> pairs, RandomGenerator random, Function<CapacityScenario, ScenarioMode> scenarioSupplier) {
+		Builder builder = builder(chairCapacity, pairs, random);
+		CapacityScenario scenario = builder.build();
 		ScenarioMode mode = scenarioSupplier.apply(scenario);
 		switch(mode) {
 			case CLINIC_BREAK:
@@ -207,23 +281,19 @@ public class CapacityScenario {
 			case SUFFICIENT:
 				return scenario;
 			case BELOW_CAPCITY:
-				CapacityScenario newScenario = scenario;
 				do {
-					newScenario = newScenario.splitHalf();
-				} while(newScenario.getChairsOccupied() < chairCapacity && newScenario.hasSplittablePairs());
-				
-				if(newScenario.getChairsOccupied() < chairCapacity) {
-					CapacityScenario linkSplit = newScenario.splitLinksToCapacity();
-					if(linkSplit != newScenario) {
-						newScenario = linkSplit;
-					}
+					builder.splitHalf();
+				} while(builder.getChairsOccupied() < chairCapacity && builder.hasSplittablePairs());
+
+				if(builder.getChairsOccupied() < chairCapacity) {
+					builder.splitLinksToCapacity();
 				}
-				
-				return newScenario;
+
+				return builder.build();
 			case MAXIMIZE:
-				return scenario.splitPairs(pairs.size(), true);
+				return builder.splitPairs(pairs.size(), true).build();
 			default:
 				throw new RuntimeException("Unknown scenario mode: " + mode);
 		}
 	}
-}
\ No newline at end of file
+}
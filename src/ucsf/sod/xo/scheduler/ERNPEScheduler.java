@@ -1,10 +1,11 @@
 package ucsf.sod.xo.scheduler;
 
 import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,6 +14,7 @@ import java.util.TreeSet;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -62,6 +64,17 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 		}
 	};
 
+	public static enum Engine {
+		ROUNDS,		// rounds of Scheduler.schedule(), relaxing the pairing selection mode when stuck
+		MIN_COST_FLOW;	// one min-cost flow over every session, see scheduleMinCostFlow()
+	}
+
+	// Costs of the min-cost flow: a pairing selection mode further down the relaxation costs MODE_COST per step,
+	// the k-th assignment of a student LOAD_COST * (2k - 1), and a second assignment in a week DOUBLE_BOOKED_COST
+	private static final long MODE_COST = 1_000;
+	private static final long LOAD_COST = 10;
+	private static final long DOUBLE_BOOKED_COST = 1_000_000;
+
 	private static final int DEFAULT_FULL_RETRIES = 1;
 	
 	private final Map<DatedSession, Collection<Pairing>> pool;
@@ -73,9 +86,13 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 	private final Function<PairingSelectionMode, PairingSelectionMode> modeToggle;
 	private final BiPredicate<DatedSession, Student> moratoriumFilter;
 	private final Predicate<Student> includedStudents;
+	private final List<Student> providers; // D3s and D4s of the practice, in the order of the index
 	private int retryAttempts = DEFAULT_FULL_RETRIES;
 
 	private final Function<DatedSession, UpperLower> getPriority;
+	private final int firstDay; // epoch day of the earliest session of the pool, from which weeks are counted
+	private final RandomGenerator random;
+	private final Engine engine;
 	
 	private final Map<Student, Integer> remaining = new TreeMap<Student, Integer>();
 	
@@ -84,7 +101,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 		return remaining;
 	}
 
-	private ERNPEScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> space, String label, PairingSelectionMode startingMode, Function<PairingSelectionMode, PairingSelectionMode> toggle, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority) {
+	private ERNPEScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> space, StudentIndex students, String label, PairingSelectionMode startingMode, Function<PairingSelectionMode, PairingSelectionMode> toggle, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random, Engine engine) {
 		this.practice = practice;
 		this.pool = space;
 		this.label = label;
@@ -93,6 +110,154 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 		this.moratoriumFilter = moratoriumFilter;
 		this.includedStudents = excludedStudents.negate();
 		this.getPriority = getPriority;
+		this.firstDay = space.keySet().stream().mapToInt(s -> SODDateUtils.toEpochDay(s.date)).min().orElse(0);
+		if(random == null) {
+			throw new IllegalArgumentException("The " + label + " scheduler of GP-" + practice + " needs its own random stream");
+		}
+		this.random = random;
+		this.engine = engine;
+		this.usage = new UsageIndex(students);
+		
+		List<Student> providers = new ArrayList<Student>();
+		for(int id = StudentIndex.PLACEHOLDER + 1; id < students.size(); id++) {
+			Student s = students.get(id);
+			if(s.practice == practice && (s.isD3() || s.isD4() || s.isID4() || s.isID3())) {
+				providers.add(s);
+			}
+		}
+		this.providers = providers;
+	}
+
+	/**
+	 * Counts the weeks of the assignments outside the pool towards the usage of their students, such as those kept when
+	 * only part of a schedule is generated again, so that the students are balanced over the whole schedule
+	 */
+	public ERNPEScheduler withRetained(Map<DatedSession, Student> retained) {
+		Map<Student, Set<Integer>> weeks = new HashMap<Student, Set<Integer>>();
+		retained.forEach((session, s) -> {
+			if(!pool.containsKey(session)) {
+				weeks.computeIfAbsent(s, _s -> new HashSet<Integer>()).add(SODDateUtils.toEpochDay(SODDateUtils.floorToLastMonday(session.date)));
+			}
+		});
+		weeks.forEach((s, w) -> usage.count(s, w.size()));
+		return this;
+	}
+
+	@Override
+	public Map<DatedSession, Student> schedule(Strategy strategy) {
+		return engine == Engine.MIN_COST_FLOW ? scheduleMinCostFlow() : Scheduler.super.schedule(strategy);
+	}
+
+	/**
+	 * Assigns a student to every session it can in one min-cost flow: source -> session -> (student, week) -> student -> sink.
+	 * A student takes a session if their pairing there is unlabeled and they are off moratorium, at the cost of the first
+	 * selection mode of the relaxation allowing the pairing; a student takes one session a week, and a second one only
+	 * at a cost outweighing any other; and the k-th session of a student costs more than the (k-1)-th, so among the
+	 * assignments covering the most sessions, the cheapest one keeps the counts of the students as even as the modes allow.
+	 * @return the student of each session covered; the sessions left uncovered are returned by getUnassignedKeys()
+	 */
+	private Map<DatedSession, Student> scheduleMinCostFlow() {
+		List<PairingSelectionMode> modes = new ArrayList<PairingSelectionMode>();
+		for(PairingSelectionMode m = defaultMode; m != null; m = modeToggle.apply(m)) {
+			modes.add(m);
+		}
+		modes.add(PairingSelectionMode.DESPERATION);
+
+		List<DatedSession> sessions = new ArrayList<DatedSession>(new TreeSet<DatedSession>(pool.keySet()));
+		List<Student> students = providers.stream()
+			.filter(includedStudents)
+			.sorted()
+			.collect(Collectors.toList());
+		Map<Student, Integer> studentIndex = new TreeMap<Student, Integer>();
+		for(Student s : students) {
+			studentIndex.put(s, studentIndex.size());
+		}
+		int weeks = sessions.stream().mapToInt(this::weekOf).max().orElse(-1) + 1;
+
+		// Nodes: source, sink, the sessions, the students, then the (student, week) nodes in use
+		int source = 0, sink = 1, firstSession = 2, firstStudent = firstSession + sessions.size(), firstWeek = firstStudent + students.size();
+		int[][] weekNode = new int[students.size()][weeks];
+		int nodes = firstWeek;
+		for(DatedSession session : sessions) {
+			int week = weekOf(session);
+			for(Student s : getCache(session).keySet()) {
+				Integer i = studentIndex.get(s);
+				if(i != null && weekNode[i][week] == 0) {
+					weekNode[i][week] = nodes++;
+				}
+			}
+		}
+
+		MinCostFlow flow = new MinCostFlow(nodes);
+		for(int i = 0; i < sessions.size(); i++) {
+			flow.addEdge(source, firstSession + i, 1, 0);
+		}
+
+		List<List<Pair<Integer, Student>>> assignable = new ArrayList<List<Pair<Integer, Student>>>(); // edge and student of each option of each session
+		for(int i = 0; i < sessions.size(); i++) {
+			DatedSession session = sessions.get(i);
+			List<Pair<Integer, Student>> options = new ArrayList<Pair<Integer, Student>>();
+			assignable.add(options);
+			int week = weekOf(session);
+			for(Map.Entry<Student, Pairing> e : new TreeMap<Student, Pairing>(getCache(session)).entrySet()) {
+				Integer s = studentIndex.get(e.getKey());
+				if(s == null || moratoriumFilter.test(session, e.getKey())) {
+					continue;
+				}
+
+				int mode = 0;
+				while(modes.get(mode).filter.test(e.getValue())) {
+					mode++;
+				}
+				options.add(Pair.of(flow.addEdge(firstSession + i, weekNode[s][week], 1, mode * MODE_COST), e.getKey()));
+			}
+		}
+
+		for(int s = 0; s < students.size(); s++) {
+			for(int week = 0; week < weeks; week++) {
+				if(weekNode[s][week] != 0) {
+					flow.addEdge(weekNode[s][week], firstStudent + s, 1, 0);
+					flow.addEdge(weekNode[s][week], firstStudent + s, sessions.size(), DOUBLE_BOOKED_COST);
+				}
+			}
+
+			int retained = usage.getCount(students.get(s)); // weeks counted before the flow, by withRetained()
+			for(int k = 1; k <= weeks; k++) {
+				flow.addEdge(firstStudent + s, sink, 1, LOAD_COST * (2 * (retained + k) - 1));
+			}
+			flow.addEdge(firstStudent + s, sink, sessions.size(), LOAD_COST * (2 * (retained + weeks) + 1));
+		}
+
+		flow.solve(source, sink);
+
+		Map<DatedSession, Student> m = getMapInstance();
+		List<DatedSession> unassigned = new ArrayList<DatedSession>();
+		for(int i = 0; i < sessions.size(); i++) {
+			Student assigned = null;
+			for(Pair<Integer, Student> option : assignable.get(i)) {
+				if(flow.getFlow(option.getLeft()) > 0) {
+					assigned = option.getRight();
+				}
+			}
+
+			if(assigned == null) {
+				unassigned.add(sessions.get(i));
+			} else {
+				insert(m, sessions.get(i), assigned);
+			}
+		}
+
+		reportCompletedRound(m, unassigned);
+		setUnassignedKeys(unassigned);
+		if(!unassigned.isEmpty()) {
+			reportUnassignedKeys(unassigned);
+		}
+		return m;
+	}
+
+	@Override
+	public RandomGenerator getRandom() {
+		return random;
 	}
 
 	private List<DatedSession> unassignedKeys = null;
@@ -110,16 +275,16 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 	@Override
 	public List<DatedSession> getCandidateKeys() {
 		List<DatedSession> session = new ArrayList<DatedSession>(pool.keySet());
-		XOGridUtils.shuffle(session);
+		Collections.sort(session); // the shuffle should not depend on the hashing of the pool
+		XOGridUtils.shuffle(session, random);
 		return session;
 	}
 	
 	@Override
 	public List<Student> getCandidateValues() {
-		return practice
-			.getStudentsStream(s -> s.isD3() || s.isD4() || s.isID4() || s.isID3())
+		return providers.stream()
 			.filter(includedStudents)
-//			.map(s -> Pair.of(s, usedDates.getOrDefault(s, Set.of()).size()))
+//			.map(s -> Pair.of(s, usage.getCount(s)))
 //			.sorted((p1, p2) -> Integer.compare(p1.getRight(), p2.getRight()))
 //			.collect(Collectors.groupingBy(
 //				p -> p.getRight(),
@@ -130,7 +295,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 //		return null;
 			.collect(Collectors.collectingAndThen(
 				Collectors.toList(), 
-				l -> { XOGridUtils.shuffle(l); return l; }
+				l -> { XOGridUtils.shuffle(l, random); return l; }
 			));
 	}
 
@@ -167,7 +332,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 			return Student.PLACEHOLDER;
 		}
 
-		XOGridUtils.shuffle(l);
+		XOGridUtils.shuffle(l, random);
 		for(Pairing p : l) {
 			
 			boolean a = moratoriumFilter.test(candidateDate, p.a);
@@ -188,7 +353,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 			}
 
 			// If we found a candidate and they are not doing the assignment this week, then force assignment
-			if(candidate != Student.PLACEHOLDER && usedDates.getOrDefault(candidate, Set.of()).contains(SODDateUtils.floorToLastMonday(candidateDate.date))) {
+			if(candidate != Student.PLACEHOLDER && isUsedWeek(candidate, candidateDate)) {
 				System.err.println("Forcing " + candidate + " on " + candidateDate + " with pairing type " + p.type);
 				return candidate;
 			}
@@ -217,7 +382,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 			return true;
 		}
 		
-		if(mode != PairingSelectionMode.DESPERATION && usedDates.getOrDefault(s, Set.of()).contains(SODDateUtils.floorToLastMonday(candidateDate.date))) {
+		if(mode != PairingSelectionMode.DESPERATION && isUsedWeek(s, candidateDate)) {
 			System.out.println("\t\t\t"+true);
 			return true;
 		}
@@ -232,11 +397,39 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 	 * Mutates the given candidate list
 	 */
 	public List<Student> filterCandidates(DatedSession candidateDate, List<Student> candidates, Collection<Pairing> options) {
-		Map<Student, Pairing> m = getCache(candidateDate);
 
-//		System.out.println("Students: " + XOGridUtils.wrapStudentSet(new TreeSet<Student>(m.keySet())));
+//		System.out.println("Students: " + XOGridUtils.wrapStudentSet(new TreeSet<Student>(getCache(candidateDate).keySet())));
 //		System.out.println("Candidates: " + XOGridUtils.wrapStudentSet(new TreeSet<Student>(candidates)));
 		
+		candidates = compatibleCandidates(candidateDate, candidates, options);
+		if(candidates.size() == 0) {
+//			System.out.println("No candidates for " + candidateDate);
+			return candidates;
+		} else {
+//			System.out.println("Something left");
+		}
+		
+		// Keep the least used candidates, in the order given. Which candidates are eligible depends on the session, so a
+		// structure of the students by count would still have to be intersected with them; compatibleCandidates() has
+		// already walked the list, and one more pass over their counts keeps the order the shuffle draws from unchanged
+		int least = Integer.MAX_VALUE;
+		for(Student s : candidates) {
+			least = Math.min(least, usage.getCount(s));
+		}
+		int _least = least;
+		candidates.removeIf(s -> usage.getCount(s) != _least);
+		XOGridUtils.shuffle(candidates, random);
+		return candidates;
+	}
+	
+	@Override
+	/**
+	 * Keep only candidates of pairings that are unlabeled and selectable in the current mode, off moratorium and not yet assigned this week
+	 * Mutates the given candidate list
+	 */
+	public List<Student> compatibleCandidates(DatedSession candidateDate, List<Student> candidates, Collection<Pairing> options) {
+		Map<Student, Pairing> m = getCache(candidateDate);
+		int week = weekOf(candidateDate);
 		candidates.removeIf(
 			s -> {
 
@@ -245,25 +438,9 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 				return !m.containsKey(s) || 
 				mode.filter.test(m.get(s)) ||
 				moratoriumFilter.test(candidateDate, s) ||
-				(mode != PairingSelectionMode.DESPERATION && usedDates.getOrDefault(s, Set.of()).contains(SODDateUtils.floorToLastMonday(candidateDate.date)));
+				(mode != PairingSelectionMode.DESPERATION && usage.isUsed(s, week));
 			}
 		);
-
-		if(candidates.size() == 0) {
-//			System.out.println("No candidates for " + candidateDate);
-			return candidates;
-		} else {
-//			System.out.println("Something left");
-		}
-		
-		Map<Integer, List<Student>> _m = candidates.stream().collect(
-			Collectors.groupingBy(
-				s -> usedDates.getOrDefault(s, Set.of()).size(),
-				TreeMap::new,
-				Collectors.toList()
-		));
-		candidates = _m.entrySet().stream().min(Comparator.comparing(Map.Entry::getKey)).get().getValue();
-		XOGridUtils.shuffle(candidates);
 		return candidates;
 	}
 	
@@ -365,7 +542,7 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 				mode.filter.test(m.get(s)) ||
 				s != ChairScheduler.selectProvider(m.get(s), candidateDate.getPeriod(), priority) ||
 				moratoriumFilter.test(candidateDate, s) ||
-				(mode != PairingSelectionMode.DESPERATION && usedDates.getOrDefault(s, Set.of()).contains(SODDateUtils.floorToLastMonday(candidateDate.date)))
+				(mode != PairingSelectionMode.DESPERATION && isUsedWeek(s, candidateDate))
 			);
 		}
 		return candidates;
@@ -382,8 +559,8 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 				if(last == PairingSelectionMode.DESPERATION) {
 					System.err.println("Desperation mode exhausted");
 
-//					usedDates.forEach((s, l) -> {
-//						System.err.println(s + "\t" + l.size());
+//					usedWeeks.forEach((s, l) -> {
+//						System.err.println(s + "\t" + l.cardinality());
 //					});
 
 					reportUnassignedKeys(unassignedKeys);
@@ -391,8 +568,8 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 				} else {
 					System.err.println("Retry attempted, entering desperation mode");
 					
-//					usedDates.forEach((s, l) -> {
-//						System.err.println(s + "\t" + l.size());
+//					usedWeeks.forEach((s, l) -> {
+//						System.err.println(s + "\t" + l.cardinality());
 //					});
 					
 					mode = PairingSelectionMode.DESPERATION;
@@ -441,18 +618,21 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 		retryAttempts = DEFAULT_FULL_RETRIES;
 	}
 
-	private Map<Student, Set<LocalDate>> usedDates = new TreeMap<Student, Set<LocalDate>>();
+	private final UsageIndex usage; // weeks of each student with an assignment
+
+	private int weekOf(DatedSession session) {
+		return SODDateUtils.weekIndex(SODDateUtils.toEpochDay(session.date), firstDay);
+	}
+
+	private boolean isUsedWeek(Student s, DatedSession session) {
+		return usage.isUsed(s, weekOf(session));
+	}
 
 	@Override
 	public void insert(Map<DatedSession, Student> m, DatedSession candidateKey, Student candidate) {
 		Scheduler.super.insert(m, candidateKey, candidate);
 
-		Set<LocalDate> dates = usedDates.get(candidate);
-		if(dates == null) {
-			usedDates.put(candidate, dates = new TreeSet<LocalDate>());
-		}
-		LocalDate date = SODDateUtils.floorToLastMonday(candidateKey.date);
-		dates.add(date);
+		usage.use(candidate, weekOf(candidateKey));
 		
 		Pairing p = getCache(candidateKey).get(candidate);
 		Collection<Pairing> pairs = pool.get(candidateKey);
@@ -463,19 +643,73 @@ public class ERNPEScheduler implements Scheduler<DatedSession, Pairing, Student>
 		//System.err.println("Labeling:\t" + candidateKey.toStringPretty() + "\t" + labeledPair + "\t" + System.identityHashCode(labeledPair) + "\t" + System.identityHashCode(p));
 	}
 
-	public static Map<DatedSession, Student> buildERSchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority) {
-		return buildERScheduler(practice, global, (x, y) -> true, excludedStudents, getPriority).schedule();
+	/**
+	 * @return a copy of the pool a scheduler can label without touching the given one, e.g. for the runs of a SchedulerPortfolio
+	 */
+	public static Map<DatedSession, Collection<Pairing>> copyPool(Map<DatedSession, Collection<Pairing>> pool) {
+		Map<DatedSession, Collection<Pairing>> copy = new TreeMap<DatedSession, Collection<Pairing>>();
+		pool.forEach((session, pairs) -> copy.put(session, new ArrayList<Pairing>(pairs)));
+		return copy;
 	}
 	
-	public static ERNPEScheduler buildERScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority) {
-		return new ERNPEScheduler(practice, global, ER_LABEL, PairingSelectionMode.DEFAULT, ER_MODE_TOGGLE, moratoriumFilter, excludedStudents, getPriority);
+	/**
+	 * Labels the pairings of the assignments in the pool, as the scheduler that made them labeled its own copy
+	 */
+	public static void label(Map<DatedSession, Collection<Pairing>> pool, Map<DatedSession, Student> assignments, String label) {
+		assignments.forEach((session, student) -> {
+			Collection<Pairing> pairs = pool.get(session);
+			Pairing p = pairs.stream()
+				.filter(_p -> _p.label == null && (_p.a == student || _p.b == student))
+				.findFirst()
+				.orElseThrow(() -> new RuntimeException("No unlabeled pairing of " + student.id + " on " + session));
+			pairs.remove(p);
+			pairs.add(p.label(label));
+		});
 	}
 
-	public static Map<DatedSession, Student> buildNPESchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority) {
-		return buildNPEScheduler(practice, global, (x, y) -> true, excludedStudents, getPriority).schedule();
+	/**
+	 * @param random stream of the ER schedule of the practice
+	 */
+	public static Map<DatedSession, Student> buildERSchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random) {
+		return buildERSchedule(practice, global, students, excludedStudents, getPriority, random, Engine.ROUNDS);
+	}
+	
+	public static Map<DatedSession, Student> buildERSchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random, Engine engine) {
+		return buildERScheduler(practice, global, students, (x, y) -> true, excludedStudents, getPriority, random, engine).schedule();
+	}
+	
+	/**
+	 * @param students index of the students to choose from, e.g. XOGridReader.getStudentIndex(), shared by the schedulers
+	 * @param random stream of the ER schedule of the practice
+	 */
+	public static ERNPEScheduler buildERScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random) {
+		return buildERScheduler(practice, global, students, moratoriumFilter, excludedStudents, getPriority, random, Engine.ROUNDS);
+	}
+	
+	public static ERNPEScheduler buildERScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random, Engine engine) {
+		return new ERNPEScheduler(practice, global, students, ER_LABEL, PairingSelectionMode.DEFAULT, ER_MODE_TOGGLE, moratoriumFilter, excludedStudents, getPriority, random, engine);
+	}
+
+	/**
+	 * @param random stream of the NPE schedule of the practice
+	 */
+	public static Map<DatedSession, Student> buildNPESchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random) {
+		return buildNPESchedule(practice, global, students, excludedStudents, getPriority, random, Engine.ROUNDS);
+	}
+	
+	public static Map<DatedSession, Student> buildNPESchedule(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random, Engine engine) {
+		return buildNPEScheduler(practice, global, students, (x, y) -> true, excludedStudents, getPriority, random, engine).schedule();
+	}
+	
+	/**
+	 * @param students index of the students to choose from, e.g. XOGridReader.getStudentIndex(), shared by the schedulers
+	 * @param random stream of the NPE schedule of the practice
+	 */
+	public static ERNPEScheduler buildNPEScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random) {
+		return buildNPEScheduler(practice, global, students, moratoriumFilter, excludedStudents, getPriority, random, Engine.ROUNDS);
 	}
 	
-	public static ERNPEScheduler buildNPEScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority) {
-		return new ERNPEScheduler(practice, global, NPE_LABEL, PairingSelectionMode.PRIMARY, NPE_MODE_TOGGLE, moratoriumFilter, excludedStudents, getPriority);
+	public static ERNPEScheduler buildNPEScheduler(GroupPractice practice, Map<DatedSession, Collection<Pairing>> global, StudentIndex students, BiPredicate<DatedSession, Student> moratoriumFilter, Predicate<Student> excludedStudents, Function<DatedSession, UpperLower> getPriority, RandomGenerator random, Engine engine) {
+		return new ERNPEScheduler(practice, global, students, NPE_LABEL, PairingSelectionMode.PRIMARY, NPE_MODE_TOGGLE, moratoriumFilter, excludedStudents, getPriority, random, engine);
 	}
 }
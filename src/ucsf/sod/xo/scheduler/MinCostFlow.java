@@ -0,0 +1,121 @@
+package ucsf.sod.xo.scheduler;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Min-cost max-flow by successive shortest paths, with Dijkstra over reduced costs. Costs have to be
+ * non-negative. Ties between paths of equal cost go to the lower node and the earlier edge, so a solve is deterministic.
+ */
+class MinCostFlow {
+
+	private static final long INFINITY = Long.MAX_VALUE / 4;
+
+	private final int nodes;
+	private int edges = 0;
+	private int[] head;
+	private int[] next = new int[16];
+	private int[] to = new int[16];
+	private int[] capacity = new int[16];
+	private long[] cost = new long[16];
+
+	MinCostFlow(int nodes) {
+		this.nodes = nodes;
+		this.head = new int[nodes];
+		Arrays.fill(head, -1);
+	}
+
+	/**
+	 * @return the id of the edge, to read its flow after solve()
+	 */
+	int addEdge(int from, int _to, int cap, long _cost) {
+		if(_cost < 0) {
+			throw new IllegalArgumentException("Negative cost from " + from + " to " + _to + ": " + _cost);
+		}
+
+		int id = edges;
+		add(from, _to, cap, _cost);
+		add(_to, from, 0, -_cost);
+		return id;
+	}
+
+	private void add(int from, int _to, int cap, long _cost) {
+		if(edges == to.length) {
+			int size = edges << 1;
+			next = Arrays.copyOf(next, size);
+			to = Arrays.copyOf(to, size);
+			capacity = Arrays.copyOf(capacity, size);
+			cost = Arrays.copyOf(cost, size);
+		}
+		next[edges] = head[from];
+		to[edges] = _to;
+		capacity[edges] = cap;
+		cost[edges] = _cost;
+		head[from] = edges++;
+	}
+
+	int getFlow(int edge) {
+		return capacity[edge ^ 1];
+	}
+
+	/**
+	 * Pushes the maximum flow from source to sink at the minimum cost
+	 * @return the flow and its cost
+	 */
+	long[] solve(int source, int sink) {
+		long[] potential = new long[nodes];
+		long[] distance = new long[nodes];
+		int[] via = new int[nodes];
+		long flow = 0, total = 0;
+
+		while(true) {
+			Arrays.fill(distance, INFINITY);
+			Arrays.fill(via, -1);
+			distance[source] = 0;
+			PriorityQueue<long[]> queue = new PriorityQueue<long[]>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+			queue.add(new long[] { 0, source });
+			while(!queue.isEmpty()) {
+				long[] top = queue.poll();
+				int u = (int)top[1];
+				if(top[0] > distance[u]) {
+					continue;
+				}
+
+				for(int e = head[u]; e != -1; e = next[e]) {
+					if(capacity[e] == 0) {
+						continue;
+					}
+
+					int v = to[e];
+					long d = distance[u] + cost[e] + potential[u] - potential[v];
+					if(d < distance[v]) {
+						distance[v] = d;
+						via[v] = e;
+						queue.add(new long[] { d, v });
+					}
+				}
+			}
+
+			if(distance[sink] == INFINITY) {
+				return new long[] { flow, total };
+			}
+
+			for(int v = 0; v < nodes; v++) {
+				if(distance[v] != INFINITY) {
+					potential[v] += distance[v];
+				}
+			}
+
+			int push = Integer.MAX_VALUE;
+			for(int v = sink; v != source; v = to[via[v] ^ 1]) {
+				push = Math.min(push, capacity[via[v]]);
+			}
+			for(int v = sink; v != source; v = to[via[v] ^ 1]) {
+				capacity[via[v]] -= push;
+				capacity[via[v] ^ 1] += push;
+				total += push * cost[via[v]];
+			}
+			flow += push;
+		}
+	}
+}
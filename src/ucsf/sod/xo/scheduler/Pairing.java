@@ -1,10 +1,9 @@
 package ucsf.sod.xo.scheduler;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import ucsf.sod.xo.objects.Student;
@@ -198,183 +197,185 @@ public class Pairing {
 		}
 	}
 	
-	public static List<Pairing> pairUp(Collection<Student> s) {
+	/**
+	 * Pairs the students of a session: the students are taken in the given order, the unprocessed ones tracked as a bitset over the ids of the index
+	 */
+	public static List<Pairing> pairUp(StudentIndex index, Collection<Student> s) {
 		List<Pairing> l = new ArrayList<Pairing>();
-		Set<Student> unprocessed = new HashSet<Student>(s);
+		int[] order = new int[s.size()];
+		BitSet unprocessed = new BitSet(index.size());
+		int n = 0;
 		for(Student student : s) {
+			unprocessed.set(order[n++] = index.indexOf(student));
+		}
+		
+		for(int i = 0; i < n; i++) {
+			int student = order[i];
 
 			// Continue to next student if student has already been processed, or is a D2
-			if(student.isD2() || !unprocessed.contains(student)) {
+			if(index.isD2(student) || !unprocessed.get(student)) {
 				continue;
 			}
 
 			// Student paired with D2 link
-			Student candidate = student.getSecondaryLink();
-			if(unprocessed.contains(candidate)) {
-				if(student.isFourthYear()) {
+			int candidate = index.getSecondaryLink(student);
+			if(unprocessed.get(candidate)) {
+				if(index.isFourthYear(student)) {
 					
 					// Check the third-year
-					Student thirdYear = student.getPrimaryLink();
-					if(thirdYear == Student.PLACEHOLDER) {
-						System.err.println("Student doesn't have a link: " + student.id);
-					} else if(unprocessed.contains(thirdYear)) {
+					int thirdYear = index.getPrimaryLink(student);
+					if(thirdYear == StudentIndex.PLACEHOLDER) {
+						System.err.println("Student doesn't have a link: " + index.get(student).id);
+					} else if(unprocessed.get(thirdYear)) {
 						//Let's pair the two D3s together
-						Student thirdYearPartner = thirdYear.getPartner();
-						if(unprocessed.contains(thirdYearPartner)) {
-							l.add(Pairing.of(thirdYear, thirdYearPartner, PairingType.SECONDARY_3));
-							unprocessed.remove(thirdYear);
-							unprocessed.remove(thirdYearPartner);
+						int thirdYearPartner = index.getPartner(thirdYear);
+						if(unprocessed.get(thirdYearPartner)) {
+							l.add(Pairing.of(index.get(thirdYear), index.get(thirdYearPartner), PairingType.SECONDARY_3));
+							unprocessed.clear(thirdYear);
+							unprocessed.clear(thirdYearPartner);
 						} else {
-							System.err.println("Third-year partner ["+thirdYear.id+"] is missing; could partner be on rotation? Making third-year an orphan");
-							l.add(Pairing.of(thirdYear, Student.PLACEHOLDER, PairingType.ORPHAN));
-							unprocessed.remove(thirdYear);
+							System.err.println("Third-year partner ["+index.get(thirdYear).id+"] is missing; could partner be on rotation? Making third-year an orphan");
+							l.add(Pairing.of(index.get(thirdYear), Student.PLACEHOLDER, PairingType.ORPHAN));
+							unprocessed.clear(thirdYear);
 						}
 						
 					// Check the third-year partner
-					} else if(unprocessed.contains(thirdYear.getPartner())) {
-						System.err.println("Third-year ["+thirdYear.id+"] is missing, but partner is around. Could third-year be on rotation?");
+					} else if(unprocessed.get(index.getPartner(thirdYear))) {
+						System.err.println("Third-year ["+index.get(thirdYear).id+"] is missing, but partner is around. Could third-year be on rotation?");
 					}
 					
-					l.add(Pairing.of(student, candidate, PairingType.SECOND_42));
-					unprocessed.remove(student);
-					unprocessed.remove(candidate);
+					l.add(Pairing.of(index.get(student), index.get(candidate), PairingType.SECOND_42));
+					unprocessed.clear(student);
+					unprocessed.clear(candidate);
 
-				} else if(student.isThirdYear()) {
+				} else if(index.isThirdYear(student)) {
 					
 					// Check the fourth-year; if present, connect the D2 with the D4
-					Student fourthYear = student.getPrimaryLink();
-					if(unprocessed.contains(fourthYear)) {
+					int fourthYear = index.getPrimaryLink(student);
+					if(unprocessed.get(fourthYear)) {
 						
-						l.add(Pairing.of(fourthYear, candidate, PairingType.SECOND_42));
-						unprocessed.remove(fourthYear);
-						unprocessed.remove(candidate);
+						l.add(Pairing.of(index.get(fourthYear), index.get(candidate), PairingType.SECOND_42));
+						unprocessed.clear(fourthYear);
+						unprocessed.clear(candidate);
 						
-						Student partner = student.getPartner();
-						if(!unprocessed.contains(partner)) {
-							throw new RuntimeException("Where is the partner ["+partner.id+"] of " + student.id);
+						int partner = index.getPartner(student);
+						if(!unprocessed.get(partner)) {
+							throw new RuntimeException("Where is the partner ["+index.get(partner).id+"] of " + index.get(student).id);
 						}
 						
-						l.add(Pairing.of(student, partner, PairingType.SECONDARY_3));
-						unprocessed.remove(student);
-						unprocessed.remove(partner);						
+						l.add(Pairing.of(index.get(student), index.get(partner), PairingType.SECONDARY_3));
+						unprocessed.clear(student);
+						unprocessed.clear(partner);
 						
 					// Fourth-year is not around
 					} else {
-						l.add(Pairing.of(student, candidate, PairingType.SECOND_32));
-						unprocessed.remove(student);
-						unprocessed.remove(candidate);
+						l.add(Pairing.of(index.get(student), index.get(candidate), PairingType.SECOND_32));
+						unprocessed.clear(student);
+						unprocessed.clear(candidate);
 					}
 				} else {
-					throw new RuntimeException("Not sure how we failed the fourth-year and third-year tests: " + student.id);
+					throw new RuntimeException("Not sure how we failed the fourth-year and third-year tests: " + index.get(student).id);
 				}
 				
 				continue;
 			}
 
 			// Student paired with link
-			candidate = student.getPrimaryLink();
-			if(unprocessed.contains(candidate)) {
-				l.add(Pairing.of(student, candidate, PairingType.PRIMARY));
-				unprocessed.remove(student);
-				unprocessed.remove(candidate);
+			candidate = index.getPrimaryLink(student);
+			if(unprocessed.get(candidate)) {
+				l.add(Pairing.of(index.get(student), index.get(candidate), PairingType.PRIMARY));
+				unprocessed.clear(student);
+				unprocessed.clear(candidate);
 				continue;
 			}
 			
 			// Student paired with clinic partner
-			candidate = student.getPartner();
-			if(unprocessed.contains(candidate)) {
-				if(unprocessed.contains(candidate.getPrimaryLink())) {
-					l.add(Pairing.of(candidate, candidate.getPrimaryLink(), PairingType.PRIMARY));
-					unprocessed.remove(candidate);
-					unprocessed.remove(candidate.getPrimaryLink());
+			candidate = index.getPartner(student);
+			if(unprocessed.get(candidate)) {
+				int candidateLink = index.getPrimaryLink(candidate);
+				if(unprocessed.get(candidateLink)) {
+					l.add(Pairing.of(index.get(candidate), index.get(candidateLink), PairingType.PRIMARY));
+					unprocessed.clear(candidate);
+					unprocessed.clear(candidateLink);
 					
 					PairingType type;
-					if(student.getPrimaryLink() == Student.PLACEHOLDER) {
+					if(index.getPrimaryLink(student) == StudentIndex.PLACEHOLDER) {
 						type = PairingType.PRIMARY;
-						System.err.println(student.id + " pairing upgraded to PRIMARY from ORPHAN");
+						System.err.println(index.get(student).id + " pairing upgraded to PRIMARY from ORPHAN");
 					} else {
 						type = PairingType.ORPHAN;
 					}
-					l.add(Pairing.of(student, Student.PLACEHOLDER, type));
-					unprocessed.remove(student);
+					l.add(Pairing.of(index.get(student), Student.PLACEHOLDER, type));
+					unprocessed.clear(student);
 				} else {
 					PairingType type;
-					if(student.isD3() || student.isID3()) {
+					if(index.isD3(student) || index.isID3(student)) {
 						type = PairingType.SECONDARY_3;
-					} else if(student.isD4() || student.isID4()) {
+					} else if(index.isD4(student) || index.isID4(student)) {
 						type = PairingType.SECONDARY_4;
 					} else {
-						throw new RuntimeException("Unknown student year: " + student);
+						throw new RuntimeException("Unknown student year: " + index.get(student));
 					}
 					
-					l.add(Pairing.of(student, candidate, type));
-					unprocessed.remove(student);
-					unprocessed.remove(candidate);
+					l.add(Pairing.of(index.get(student), index.get(candidate), type));
+					unprocessed.clear(student);
+					unprocessed.clear(candidate);
 				}
 				continue;
 			}
 			
 			// No link, no partner; if partner doesn't exist, must use link's partner to check "cross"
-			if(candidate == Student.PLACEHOLDER) {
-				candidate = student.getPrimaryLink();
-				if(candidate == Student.PLACEHOLDER) {
-					//throw new RuntimeException("Unable to find cross for " + student.id);
-					l.add(Pairing.of(student, Student.PLACEHOLDER, PairingType.ORPHAN));
-					unprocessed.remove(student);
+			if(candidate == StudentIndex.PLACEHOLDER) {
+				candidate = index.getPrimaryLink(student);
+				if(candidate == StudentIndex.PLACEHOLDER) {
+					l.add(Pairing.of(index.get(student), Student.PLACEHOLDER, PairingType.ORPHAN));
+					unprocessed.clear(student);
 					continue;
 				}
 				
 				// "cross" located and accounted for, since "cross"'s link is placeholder 
-				Student cross = candidate.getPartner();
-				if(unprocessed.contains(cross)) {
-					System.err.println(cross.id + " pairing upgraded to PRIMARY from ORPHAN");
-					l.add(Pairing.of(cross, Student.PLACEHOLDER, PairingType.PRIMARY));
-					unprocessed.remove(cross);
+				int cross = index.getPartner(candidate);
+				if(unprocessed.get(cross)) {
+					System.err.println(index.get(cross).id + " pairing upgraded to PRIMARY from ORPHAN");
+					l.add(Pairing.of(index.get(cross), Student.PLACEHOLDER, PairingType.PRIMARY));
+					unprocessed.clear(cross);
 				}
 				
 				// student is truly orphaned
-				l.add(Pairing.of(student, Student.PLACEHOLDER, PairingType.ORPHAN));
-				unprocessed.remove(student);
+				l.add(Pairing.of(index.get(student), Student.PLACEHOLDER, PairingType.ORPHAN));
+				unprocessed.clear(student);
 				
 			// Partner is a person who is not around for some reason
 			} else {
-				Student cross = candidate.getPrimaryLink();
-				if(cross == Student.PLACEHOLDER) {
-					// if "cross" is placeholder, check why we couldn't find primary link; could it because primary link is a placeholder?
-					if(student.getPrimaryLink() == Student.PLACEHOLDER) {
-						System.err.println("Cross and link are PLACEHOLDERS for "+student.id+"; maybe clinic partner is out on rotation?");
-						l.add(Pairing.of(student, Student.PLACEHOLDER, PairingType.ORPHAN));
-						unprocessed.remove(student);
-
-					// because link and partner are people, student truly orphaned
-					} else {
-						l.add(Pairing.of(student, Student.PLACEHOLDER, PairingType.ORPHAN));
-						unprocessed.remove(student);
+				int cross = index.getPrimaryLink(candidate);
+				if(cross == StudentIndex.PLACEHOLDER) {
+					if(index.getPrimaryLink(student) == StudentIndex.PLACEHOLDER) {
+						System.err.println("Cross and link are PLACEHOLDERS for "+index.get(student).id+"; maybe clinic partner is out on rotation?");
 					}
+					l.add(Pairing.of(index.get(student), Student.PLACEHOLDER, PairingType.ORPHAN));
+					unprocessed.clear(student);
 				} else {
-					// if "cross" is present, because we didn't find cross's link/student's partner, cross is an orphan
-					// we would not reach this logic point if student's link was present at the beginning of the loop
-					if(unprocessed.contains(cross)) {
-						l.add(Pairing.of(cross, Student.PLACEHOLDER, PairingType.ORPHAN));
-						unprocessed.remove(cross);
+					// "cross" is an orphan, as we did not find cross's link/student's partner
+					if(unprocessed.get(cross)) {
+						l.add(Pairing.of(index.get(cross), Student.PLACEHOLDER, PairingType.ORPHAN));
+						unprocessed.clear(cross);
 					}
 					
-					// "cross" has no impact on student; had link not been a placeholder, we would have finished this logic at the beginning of this loop
 					PairingType type;
-					if(student.getPrimaryLink() == Student.PLACEHOLDER) {
+					if(index.getPrimaryLink(student) == StudentIndex.PLACEHOLDER) {
 						type = PairingType.PRIMARY;
-						System.err.println(student.id + " pairing upgraded to PRIMARY from ORPHAN");
+						System.err.println(index.get(student).id + " pairing upgraded to PRIMARY from ORPHAN");
 					} else {
 						type = PairingType.ORPHAN;
 					}
-					l.add(Pairing.of(student, Student.PLACEHOLDER, type));						
-					unprocessed.remove(student);
+					l.add(Pairing.of(index.get(student), Student.PLACEHOLDER, type));
+					unprocessed.clear(student);
 				}
 			}
 		}
 		
-		if(unprocessed.size() != 0) {
-			throw new RuntimeException("A student has not been paired: " + unprocessed.stream().collect(Collectors.mapping(student -> student.id, Collectors.joining(","))));
+		if(!unprocessed.isEmpty()) {
+			throw new RuntimeException("A student has not been paired: " + unprocessed.stream().mapToObj(student -> index.get(student).id).collect(Collectors.joining(",")));
 		}
 		
 		return l;
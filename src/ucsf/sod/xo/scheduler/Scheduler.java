@@ -1,11 +1,14 @@
 package ucsf.sod.xo.scheduler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 import ucsf.sod.xo.XOGridUtils;
@@ -18,6 +21,12 @@ public interface Scheduler<K, T, V> {
 		HALT; 		// just stop
 	}
 	
+	public static enum Strategy {
+		GREEDY,		// first candidate of each key in turn, see join_iter()
+		MATCHING,	// maximum matching of the keys to the values, see join_matching()
+		BACKTRACKING; // greedy first, then other candidates of earlier keys, see join()
+	}
+	
 	public List<K> getCandidateKeys();
 	public List<V> getCandidateValues();
 	public Map<K, Collection<T>> getSpace();
@@ -37,6 +46,12 @@ public interface Scheduler<K, T, V> {
 	 * Should only be called by Scheduler
 	 */
 	public void setUnassignedKeys(List<K> l);
+	
+	/**
+	 * @return the random stream the scheduler draws its shuffles from; a scheduler has to own one, so that its draws
+	 * do not depend on what else draws from a shared stream
+	 */
+	public RandomGenerator getRandom();
 
 	public Map<V, Integer> getRemainingMap();
 	
@@ -49,6 +64,15 @@ public interface Scheduler<K, T, V> {
 	}
 	
 	public default Map<K, V> schedule() {
+		return schedule(Strategy.GREEDY);
+	}
+	
+	/**
+	 * Assigns the keys in rounds, each value to at most one key per round, until every key is assigned or handleNoResults() halts.
+	 * An interrupted thread stops after the current round, leaving the remaining keys unassigned.
+	 * @param strategy how the keys of a round are assigned
+	 */
+	public default Map<K, V> schedule(Strategy strategy) {
 		Map<K, V> pairings = new TreeMap<K, V>();
 		
 		List<K> unassignedKeys = getCandidateKeys();
@@ -57,16 +81,23 @@ public interface Scheduler<K, T, V> {
 		List<K> shuffleList = unassignedKeys;
 		List<V> processingBlock = getCandidateValues();
 		while(!unassignedKeys.isEmpty()) {
+			if(Thread.currentThread().isInterrupted()) {
+				setUnassignedKeys(unassignedKeys);
+				break;
+			}
 			
 			// Take the unassigned keys and re-shuffle, try to slot the remaining
 			shuffleList = new ArrayList<K>(unassignedKeys);
-			XOGridUtils.shuffle(shuffleList);			
+			XOGridUtils.shuffle(shuffleList, getRandom());			
 
-			var results = join_iter(
-				processingBlock,
-				shuffleList,
-				space
-			);
+			Map<K, V> results;
+			if(strategy == Strategy.MATCHING) {
+				results = join_matching(processingBlock, shuffleList, space);
+			} else if(strategy == Strategy.BACKTRACKING) {
+				results = join(processingBlock, shuffleList, space);
+			} else {
+				results = join_iter(processingBlock, shuffleList, space);
+			}
 			pairings.putAll(results);
 			unassignedKeys.removeAll(results.keySet());
 
@@ -95,6 +126,11 @@ public interface Scheduler<K, T, V> {
 		return pairings;
 	}
 	
+	/**
+	 * Assigns the keys in rounds of join(), in the order of the keys, until every key is assigned or handleNoResults() halts.
+	 * A round used to take the first candidate of each key in one descent; it now searches on from that descent for up to
+	 * Backtracking.DEFAULT_NODES nodes, so it can assign more keys and take longer than it did.
+	 */
 	public default Map<K, V> schedule_recursive() {
 		
 		Map<K, V> pairings = new TreeMap<K, V>();
@@ -173,52 +209,109 @@ public interface Scheduler<K, T, V> {
 		return m;
 	}
 	
+	/**
+	 * Returns a maximum matching of the keys to the values, each value to at most one key, built with Hopcroft-Karp.
+	 * The candidates filterCandidates() prefers for each key are matched first; augmenting paths then extend the
+	 * matching over every compatible candidate without unmatching any key. Ties follow the order of the keys and of the candidates.
+	 */
+	public default Map<K, V> join_matching(List<V> values, List<K> keys, Map<K, Collection<T>> space) {
+		
+		Map<V, Integer> index = new HashMap<V, Integer>();
+		List<V> byIndex = new ArrayList<V>();
+		for(V v : values) {
+			if(!index.containsKey(v)) {
+				index.put(v, byIndex.size());
+				byIndex.add(v);
+			}
+		}
+		
+		int[][] preferred = new int[keys.size()][];
+		int[][] compatible = new int[keys.size()][];
+		for(int k = 0; k < keys.size(); k++) {
+			K key = keys.get(k);
+			compatible[k] = compatibleCandidates(key, new ArrayList<V>(values), space.get(key)).stream().mapToInt(index::get).toArray();
+			preferred[k] = filterCandidates(key, new ArrayList<V>(values), space.get(key)).stream().mapToInt(index::get).toArray();
+		}
+		
+		int[] keyMatch = new int[keys.size()];
+		int[] valueMatch = new int[byIndex.size()];
+		Arrays.fill(keyMatch, BipartiteMatching.FREE);
+		Arrays.fill(valueMatch, BipartiteMatching.FREE);
+		BipartiteMatching.augment(preferred, keyMatch, valueMatch);
+		BipartiteMatching.augment(compatible, keyMatch, valueMatch);
+		
+		Map<K, V> m = getMapInstance();
+		for(int k = 0; k < keys.size(); k++) {
+			if(keyMatch[k] != BipartiteMatching.FREE) {
+				insert(m, keys.get(k), byIndex.get(keyMatch[k]));
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * Returns the most keys assigned to distinct values found by backtracking over the candidates filterCandidates() prefers,
+	 * starting from the greedy assignment of join_iter(). The compatible candidates of each key are indexed once and
+	 * filtered by the values left at each step; see Backtracking.
+	 */
 	public default Map<K, V> join(List<V> values, List<K> keys, Map<K, Collection<T>> space) {
-
-		// Duplicate because we are going to take sublists of them
-		List<K> subKeys = new ArrayList<K>(keys);
-		List<V> subValues  = new ArrayList<V>(values);
 		
-		K candidateKey = null;
-		V candidate = null;
-		while(!subKeys.isEmpty()) {
-			
-			// Select a key
-			candidateKey = subKeys.remove(0);
-
-			// Determine the options
-			List<V> candidates = filterCandidates(candidateKey, new ArrayList<V>(subValues), space.get(candidateKey));
-			
-			// Pick an option
-			if(candidates.size() != 0) {
-				candidate = candidates.remove(0);
-				break;
+		Map<V, Integer> index = new HashMap<V, Integer>();
+		List<V> byIndex = new ArrayList<V>();
+		for(V v : values) {
+			if(!index.containsKey(v)) {
+				index.put(v, byIndex.size());
+				byIndex.add(v);
 			}
 		}
-
-		if(candidate == null) {
-			return Map.of();
-		} else {
-			Map<K, V> m;
-			if(subValues.isEmpty() || subKeys.isEmpty()) {
-				m = getMapInstance();
-			} else {
-				subValues.remove(candidate);
-				m = join(subValues, subKeys, space);
-				if(m.size() == 0) {
-					m = getMapInstance();
+		
+		int[][] compatible = new int[keys.size()][];
+		for(int k = 0; k < keys.size(); k++) {
+			K key = keys.get(k);
+			compatible[k] = compatibleCandidates(key, new ArrayList<V>(byIndex), space.get(key)).stream().mapToInt(index::get).toArray();
+		}
+		
+		int[] keyMatch = Backtracking.search(keys.size(), byIndex.size(), (k, remaining) -> {
+			List<V> candidates = new ArrayList<V>(compatible[k].length);
+			for(int v : compatible[k]) {
+				if(remaining.get(v)) {
+					candidates.add(byIndex.get(v));
 				}
 			}
-
-			insert(m, candidateKey, candidate);
-			return m;
+			
+			if(candidates.isEmpty()) {
+				return new int[0];
+			}
+			
+			K key = keys.get(k);
+			return filterCandidates(key, candidates, space.get(key)).stream().mapToInt(index::get).toArray();
+		}, Backtracking.DEFAULT_NODES);
+		
+		Map<K, V> m = getMapInstance();
+		for(int k = 0; k < keys.size(); k++) {
+			if(keyMatch[k] != Backtracking.FREE) {
+				insert(m, keys.get(k), byIndex.get(keyMatch[k]));
+			}
 		}
+		return m;
 	}
 	
+	/**
+	 * Keeps the candidates the key can be assigned, before any preference filterCandidates() applies among them
+	 * Mutates the given candidate list
+	 */
 	@SuppressWarnings("unlikely-arg-type")
-	public default List<V> filterCandidates(K candidateKey, List<V> candidates, Collection<T> options) {
+	public default List<V> compatibleCandidates(K candidateKey, List<V> candidates, Collection<T> options) {
 		candidates.removeIf(s -> !options.contains(s));
-		XOGridUtils.shuffle(candidates);
+		return candidates;
+	}
+	
+	/**
+	 * @return the compatible candidates of the key in the order to try them, most preferred first
+	 */
+	public default List<V> filterCandidates(K candidateKey, List<V> candidates, Collection<T> options) {
+		candidates = compatibleCandidates(candidateKey, candidates, options);
+		XOGridUtils.shuffle(candidates, getRandom());
 		return candidates;
 	}
 	
@@ -0,0 +1,240 @@
+package ucsf.sod.xo.scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
+
+import ucsf.sod.xo.scheduler.Scheduler.Strategy;
+
+/**
+ * Runs independent schedulers on a thread pool, each on its own split of a random stream, and keeps the best
+ * result by an objective. Every run has to own its state: the factory builds a new scheduler over its own copy
+ * of the space, e.g. ERNPEScheduler.copyPool(), and the caller applies the result of the best run afterwards.
+ */
+public class SchedulerPortfolio<K, T, V> {
+
+	/**
+	 * Score of the result of a run; lower is better
+	 */
+	@FunctionalInterface
+	public static interface Objective<K, V> {
+		public double score(Scheduler<K, ?, V> scheduler, Map<K, V> result);
+
+		public default Objective<K, V> plus(double weight, Objective<K, V> other) {
+			return (s, r) -> score(s, r) + weight * other.score(s, r);
+		}
+	}
+
+	/**
+	 * @return the number of keys of the space left unassigned
+	 */
+	public static <K, V> Objective<K, V> unassignedKeys() {
+		return (s, r) -> s.getSpace().size() - r.size();
+	}
+
+	/**
+	 * @return the difference between the most and the least rounds a value was left over, by Scheduler.getRemainingMap()
+	 */
+	public static <K, V> Objective<K, V> remainingSpread() {
+		return (s, r) -> {
+			Collection<Integer> remaining = s.getRemainingMap().values();
+			return remaining.isEmpty() ? 0 : remaining.stream().mapToInt(i -> i).max().getAsInt() - remaining.stream().mapToInt(i -> i).min().getAsInt();
+		};
+	}
+
+	/**
+	 * @return the variance of the number of keys assigned to each value that has any
+	 */
+	public static <K, V> Objective<K, V> countVariance() {
+		return (s, r) -> {
+			Collection<Long> counts = r.values().stream().collect(Collectors.groupingBy(v -> v, Collectors.counting())).values();
+			double mean = counts.stream().mapToLong(c -> c).average().orElse(0);
+			return counts.stream().mapToDouble(c -> (c - mean) * (c - mean)).average().orElse(0);
+		};
+	}
+
+	public static class Run<K, T, V> {
+		public final int index;
+		public final Scheduler<K, T, V> scheduler;
+		public final Map<K, V> result;
+		public final double score;
+
+		private Run(int index, Scheduler<K, T, V> scheduler, Map<K, V> result, double score) {
+			this.index = index;
+			this.scheduler = scheduler;
+			this.result = result;
+			this.score = score;
+		}
+	}
+
+	private final Function<RandomGenerator, ? extends Scheduler<K, T, V>> factory;
+	private final int runs;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor = null;
+	private Duration budget = null;
+	private Objective<K, V> objective = SchedulerPortfolio.<K, V>unassignedKeys().plus(1e-3, countVariance());
+	private double target = Double.NEGATIVE_INFINITY;
+	private Strategy strategy = Strategy.GREEDY;
+
+	private SchedulerPortfolio(Function<RandomGenerator, ? extends Scheduler<K, T, V>> factory, int runs) {
+		if(runs <= 0) {
+			throw new IllegalArgumentException("A portfolio needs at least one run: " + runs);
+		}
+		this.factory = factory;
+		this.runs = runs;
+	}
+
+	/**
+	 * @param factory builds the scheduler of a run, with its own state, drawing from the given stream
+	 */
+	public static <K, T, V> SchedulerPortfolio<K, T, V> of(Function<RandomGenerator, ? extends Scheduler<K, T, V>> factory, int runs) {
+		return new SchedulerPortfolio<K, T, V>(factory, runs);
+	}
+
+	public SchedulerPortfolio<K, T, V> withThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Runs on the given executor, e.g. one shared by portfolios running concurrently, instead of a pool of its own;
+	 * the runs still going once the result is known are cancelled, and the executor is left running
+	 */
+	public SchedulerPortfolio<K, T, V> withExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Stops waiting on the runs after the given wall-clock time; the best run completed by then is kept.
+	 * The result then depends on the speed of the runs, not only on the stream.
+	 */
+	public SchedulerPortfolio<K, T, V> withBudget(Duration budget) {
+		this.budget = budget;
+		return this;
+	}
+
+	public SchedulerPortfolio<K, T, V> withObjective(Objective<K, V> objective) {
+		this.objective = objective;
+		return this;
+	}
+
+	/**
+	 * Cancels the remaining runs once the first run, in the order of the runs, to score at or below the target is known;
+	 * the runs before it have to complete first, so the run kept does not depend on which finishes first
+	 */
+	public SchedulerPortfolio<K, T, V> stopAt(double target) {
+		this.target = target;
+		return this;
+	}
+
+	public SchedulerPortfolio<K, T, V> withStrategy(Strategy strategy) {
+		this.strategy = strategy;
+		return this;
+	}
+
+	/**
+	 * A run that fails is reported and left out, as one that did not complete.
+	 * @param random stream each run gets a split of, in the order of the runs
+	 * @return the first run scoring at or below the target, else the best run completed, the earlier run on equal scores;
+	 * null if none completed within the budget
+	 */
+	public Run<K, T, V> run(SplittableRandom random) {
+		List<RandomGenerator> streams = new ArrayList<RandomGenerator>(runs);
+		for(int i = 0; i < runs; i++) {
+			streams.add(random.split());
+		}
+
+		ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs)), r -> {
+			Thread t = new Thread(r, "scheduler-portfolio");
+			t.setDaemon(true);
+			return t;
+		});
+		CompletionService<Run<K, T, V>> completion = new ExecutorCompletionService<Run<K, T, V>>(pool);
+		Map<Future<Run<K, T, V>>, Integer> indices = new HashMap<Future<Run<K, T, V>>, Integer>();
+		for(int i = 0; i < runs; i++) {
+			int index = i;
+			indices.put(completion.submit(() -> {
+				Scheduler<K, T, V> scheduler = factory.apply(streams.get(index));
+				Map<K, V> result = scheduler.schedule(strategy);
+				return new Run<K, T, V>(index, scheduler, result, objective.score(scheduler, result));
+			}), index);
+		}
+
+		long deadline = budget == null ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos();
+		List<Run<K, T, V>> completed = new ArrayList<Run<K, T, V>>(Collections.nCopies(runs, null));
+		boolean[] finished = new boolean[runs];
+		int settled = 0; // every run before this one has finished
+		Run<K, T, V> best = null;
+		try {
+			for(int done = 0; done < runs && best == null; done++) {
+				Future<Run<K, T, V>> f;
+				if(budget == null) {
+					f = completion.take();
+				} else {
+					long wait = deadline - System.nanoTime();
+					f = wait > 0 ? completion.poll(wait, TimeUnit.NANOSECONDS) : null;
+				}
+
+				if(f == null) {
+					System.err.println("Portfolio budget spent after " + done + " of " + runs + " runs");
+					break;
+				}
+
+				int index = indices.get(f);
+				finished[index] = true;
+				try {
+					completed.set(index, f.get());
+				} catch(ExecutionException e) {
+					System.err.println("Portfolio run " + index + " failed: " + e.getCause());
+				}
+
+				for(; settled < runs && finished[settled]; settled++) {
+					Run<K, T, V> r = completed.get(settled);
+					if(r != null && r.score <= target) {
+						best = r;
+						break;
+					}
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting on the portfolio", e);
+		} finally {
+			// Runs still going stop at their next round
+			if(executor == null) {
+				pool.shutdownNow();
+			} else {
+				indices.keySet().forEach(f -> f.cancel(true));
+			}
+		}
+
+		if(best == null) {
+			for(Run<K, T, V> r : completed) {
+				if(r != null && (best == null || r.score < best.score)) {
+					best = r;
+				}
+			}
+		}
+
+		if(best != null) {
+			System.out.println("Portfolio kept run " + best.index + " of " + runs + " with score " + best.score);
+		}
+		return best;
+	}
+}
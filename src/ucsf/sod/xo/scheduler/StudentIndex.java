@@ -0,0 +1,172 @@
+package ucsf.sod.xo.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ucsf.sod.objects.StudentYear;
+import ucsf.sod.xo.objects.Student;
+import ucsf.sod.xo.objects.Student.StudentProgram;
+import ucsf.sod.xo.objects.Student.UpperLower;
+
+/**
+ * Dense int ids for a fixed set of students, with their partner and links as id arrays and their year, program,
+ * and upper/lower priority packed into flags. Id 0 is Student.PLACEHOLDER; a link of -1 means the year of the
+ * student has no such link. Build the index once the students are linked; it does not follow later changes.
+ */
+public class StudentIndex {
+
+	public static final int PLACEHOLDER = 0;
+
+	// Flags: year ordinal in bits 0-2, international in bit 3, priority ordinal in bits 4-5
+	private static final int YEAR_MASK = 0x7;
+	private static final int INTERNATIONAL = 0x8;
+	private static final int PRIORITY_SHIFT = 4;
+
+	private final Student[] students;
+	private final Student[] table; // open addressing on the hash of the student, so that indexOf() does not box
+	private final int[] tableIds;
+	public final int[] partner;
+	public final int[] primaryLink;
+	public final int[] secondaryLink;
+	public final byte[] flags;
+
+	private StudentIndex(Collection<Student> c) {
+		List<Student> l = new ArrayList<Student>(c.size() + 1);
+		table = new Student[Integer.highestOneBit(c.size() + 1) << 2]; // at most half full
+		tableIds = new int[table.length];
+		add(l, Student.PLACEHOLDER);
+		for(Student s : c) {
+			if(find(s) < 0) {
+				add(l, s);
+			}
+		}
+		students = l.toArray(new Student[l.size()]);
+
+		int size = students.length;
+		partner = new int[size];
+		primaryLink = new int[size];
+		secondaryLink = new int[size];
+		flags = new byte[size];
+		for(int id = 0; id < size; id++) {
+			Student s = students[id];
+			boolean linked = s.year == StudentYear.FOURTH_YEAR || s.year == StudentYear.THIRD_YEAR || s.year == StudentYear.SECOND_YEAR;
+			partner[id] = linked ? indexOf(s.getPartner()) : -1;
+			primaryLink[id] = linked ? indexOf(s.getPrimaryLink()) : -1;
+			secondaryLink[id] = linked ? indexOf(s.getSecondaryLink()) : -1;
+			flags[id] = (byte)(s.year.ordinal() | (s.program == StudentProgram.INTERNATIONAL ? INTERNATIONAL : 0) | (s.priority.ordinal() << PRIORITY_SHIFT));
+		}
+	}
+
+	/**
+	 * @return the index of the students, ordered as given
+	 */
+	public static StudentIndex of(Collection<Student> students) {
+		return new StudentIndex(students);
+	}
+
+	public int size() {
+		return students.length;
+	}
+
+	public Student get(int id) {
+		return students[id];
+	}
+
+	public int indexOf(Student s) {
+		int id = find(s);
+		if(id < 0) {
+			throw new RuntimeException("Student is not indexed: " + s.id);
+		}
+		return id;
+	}
+
+	private int slot(Student s) {
+		int h = s.hashCode();
+		return (h ^ (h >>> 16)) & (table.length - 1);
+	}
+
+	/**
+	 * @return the id of the student, or -1 if not indexed
+	 */
+	private int find(Student s) {
+		for(int i = slot(s); table[i] != null; i = (i + 1) & (table.length - 1)) {
+			if(table[i] == s || table[i].equals(s)) {
+				return tableIds[i];
+			}
+		}
+		return -1;
+	}
+
+	private void add(List<Student> l, Student s) {
+		int i = slot(s);
+		while(table[i] != null) {
+			i = (i + 1) & (table.length - 1);
+		}
+		table[i] = s;
+		tableIds[i] = l.size();
+		l.add(s);
+	}
+
+	// The links of a student whose year has none fail exactly as the Student getters do
+	public int getPartner(int id) {
+		if(partner[id] < 0) {
+			students[id].getPartner();
+		}
+		return partner[id];
+	}
+
+	public int getPrimaryLink(int id) {
+		if(primaryLink[id] < 0) {
+			students[id].getPrimaryLink();
+		}
+		return primaryLink[id];
+	}
+
+	public int getSecondaryLink(int id) {
+		if(secondaryLink[id] < 0) {
+			students[id].getSecondaryLink();
+		}
+		return secondaryLink[id];
+	}
+
+	private StudentYear year(int id) {
+		return StudentYear.values()[flags[id] & YEAR_MASK];
+	}
+
+	private boolean isInternational(int id) {
+		return (flags[id] & INTERNATIONAL) != 0;
+	}
+
+	public UpperLower getPriority(int id) {
+		return UpperLower.values()[flags[id] >> PRIORITY_SHIFT];
+	}
+
+	public boolean isThirdYear(int id) {
+		return year(id) == StudentYear.THIRD_YEAR;
+	}
+
+	public boolean isFourthYear(int id) {
+		return year(id) == StudentYear.FOURTH_YEAR;
+	}
+
+	public boolean isD2(int id) {
+		return year(id) == StudentYear.SECOND_YEAR;
+	}
+
+	public boolean isD3(int id) {
+		return isThirdYear(id) && !isInternational(id);
+	}
+
+	public boolean isD4(int id) {
+		return isFourthYear(id) && !isInternational(id);
+	}
+
+	public boolean isID3(int id) {
+		return isThirdYear(id) && isInternational(id);
+	}
+
+	public boolean isID4(int id) {
+		return isFourthYear(id) && isInternational(id);
+	}
+}
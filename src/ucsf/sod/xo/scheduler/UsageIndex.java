@@ -0,0 +1,53 @@
+package ucsf.sod.xo.scheduler;
+
+import java.util.BitSet;
+
+import ucsf.sod.xo.objects.Student;
+
+/**
+ * Weeks with an assignment of each student of a scheduler and their count, updated on each assignment so that
+ * both are read in constant time. Students are kept by their id in a StudentIndex; weeks are indexed from the first week of the scheduler.
+ */
+class UsageIndex {
+
+	private final StudentIndex students;
+	private final BitSet[] weeks;
+	private final int[] counts;
+
+	UsageIndex(StudentIndex students) {
+		this.students = students;
+		this.weeks = new BitSet[students.size()];
+		this.counts = new int[students.size()];
+	}
+
+	boolean isUsed(Student s, int week) {
+		BitSet used = weeks[students.indexOf(s)];
+		return used != null && used.get(week);
+	}
+
+	/**
+	 * @return the number of weeks the student has an assignment in
+	 */
+	int getCount(Student s) {
+		return counts[students.indexOf(s)];
+	}
+
+	void use(Student s, int week) {
+		int id = students.indexOf(s);
+		if(weeks[id] == null) {
+			weeks[id] = new BitSet();
+		}
+
+		if(!weeks[id].get(week)) {
+			weeks[id].set(week);
+			counts[id]++;
+		}
+	}
+
+	/**
+	 * Adds weeks with an assignment made outside the scheduler to the count of the student, without marking any week as used
+	 */
+	void count(Student s, int weeks) {
+		counts[students.indexOf(s)] += weeks;
+	}
+}